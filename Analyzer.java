@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Turns text into index terms the same way at indexing and query time: characters are lowercased one at a
+ * time, runs of letters and digits become tokens and, when stemming, each token goes through the Porter
+ * stemmer. Tokens are gathered and stemmed in place in a char buffer and appended to a TokenBuffer, so no
+ * String is made per token; indexing looks the terms up in its Lexicon from there. When stemming, tokens
+ * of up to 16 characters are looked up in a direct-mapped cache of surface form to stem, so a repeated
+ * word costs a hash and a compare instead of a stemmer call. Each thread keeps its own cache, with the
+ * surface forms and stems packed in char arrays so a lookup touches no other objects.
+ * Every segment records the analysis it was built with in its "analyzer" file, one line of "porter" or
+ * "none", and queries against the index use that rather than what the command line asked for.
+ */
+public class Analyzer {
+
+    static final String ANALYZER_FILE = "analyzer";
+    static final int DEFAULT_CACHE_SLOTS = 1 << 14;
+    static final int MAX_CACHED_LENGTH = 16;
+
+    private static final Metrics.Timer STEM_TIMER = Metrics.timer("analyze_stem");
+
+    private static final Analyzer STEMMING = new Analyzer(true, DEFAULT_CACHE_SLOTS);
+    private static final Analyzer PLAIN = new Analyzer(false, DEFAULT_CACHE_SLOTS);
+
+    private final boolean stem;
+    private final int cacheSlots;
+    private final ThreadLocal<TermCache> caches = ThreadLocal.withInitial(TermCache::new);
+
+    public Analyzer(boolean stem, int cacheSlots) {
+        this.stem = stem;
+        this.cacheSlots = stem && cacheSlots > 0 ? Integer.highestOneBit(cacheSlots) : 0;
+    }
+
+    public static Analyzer get(boolean stem) {
+        return stem ? STEMMING : PLAIN;
+    }
+
+    public boolean isStemming() {
+        return stem;
+    }
+
+    public List<String> tokenize(CharSequence text) {
+        TokenBuffer tokens = new TokenBuffer();
+        tokenize(text, tokens);
+        return tokens.toList();
+    }
+
+    public void tokenize(CharSequence text, TokenBuffer tokens) {
+        char[] token = new char[64];
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (length == token.length) {
+                    token = Arrays.copyOf(token, length * 2);
+                }
+                token[length++] = c;
+            } else if (length > 0) {
+                tokens.add(token, analyze(token, length));
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            tokens.add(token, analyze(token, length));
+        }
+    }
+
+    // turns the lowercased token[0, length) into its term in place and returns the term's length
+    public int analyze(char[] token, int length) {
+        if (!stem) {
+            return length;
+        }
+        if (cacheSlots == 0 || length > MAX_CACHED_LENGTH) {
+            return stem(token, length);
+        }
+        return caches.get().analyze(token, length);
+    }
+
+    private static int stem(char[] token, int length) {
+        long start = Metrics.start();
+        length = PorterStemmer.stem(token, length);
+        STEM_TIMER.stop(start);
+        return length;
+    }
+
+    public void write(String segmentDir) throws IOException {
+        Files.write(Paths.get(segmentDir, ANALYZER_FILE), List.of(stem ? "porter" : "none"),
+                StandardCharsets.UTF_8);
+    }
+
+    public static Boolean readStem(String segmentDir) throws IOException {
+        File file = new File(segmentDir, ANALYZER_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        String name = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).get(0).trim();
+        if (!name.equals("porter") && !name.equals("none")) {
+            throw new IOException("unknown analyzer " + name + " in " + segmentDir);
+        }
+        return name.equals("porter");
+    }
+
+    private final class TermCache {
+        private final char[] surfaces = new char[cacheSlots * MAX_CACHED_LENGTH];
+        private final byte[] lengths = new byte[cacheSlots];
+        private final char[] stems = new char[cacheSlots * MAX_CACHED_LENGTH];
+        private final byte[] stemLengths = new byte[cacheSlots];
+
+        int analyze(char[] token, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + token[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (cacheSlots - 1);
+            int offset = slot * MAX_CACHED_LENGTH;
+            if (lengths[slot] == length && Arrays.equals(surfaces, offset, offset + length, token, 0, length)) {
+                System.arraycopy(stems, offset, token, 0, stemLengths[slot]);
+                return stemLengths[slot];
+            }
+            System.arraycopy(token, 0, surfaces, offset, length);
+            int stemLength = stem(token, length);
+            System.arraycopy(token, 0, stems, offset, stemLength);
+            lengths[slot] = (byte) length;
+            stemLengths[slot] = (byte) stemLength;
+            return stemLength;
+        }
+    }
+}
@@ -3,20 +3,34 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.io.File;
-import java.io.FileInputStream;
+import java.util.concurrent.atomic.LongAdder;
 
 public class BM25 {
 
+    static final int DEFAULT_K = 1000;
+    static final String POSTINGS_CACHE_OPTION = "--postings-cache-mb=";
+
+    private static final Metrics.Timer PARSE_TIMER = Metrics.timer("bm25_parse");
+    private static final Metrics.Timer FORMAT_TIMER = Metrics.timer("bm25_format");
+    private static final Metrics.Timer WRITE_TIMER = Metrics.timer("bm25_write");
+    private static final Metrics.Histogram EXHAUSTIVE_LATENCY = latency("exhaustive");
+    private static final Metrics.Histogram WAND_LATENCY = latency("wand");
+    private static final Metrics.Histogram BMW_LATENCY = latency("bmw");
+    private static final Metrics.Histogram SAAT_LATENCY = latency("saat");
+
     public static void main(String[] args) {
-        if (args.length != 4) {
-            System.err.println("Please input: java BM25 <index-directory> <queries-file> <output-file-name> <Stem/No>");
+        int threads = BatchRunner.parseThreads(args);
+        String metricsFile = Metrics.enable(args);
+        long postingsCacheBytes = BatchRunner.parseOption(args, POSTINGS_CACHE_OPTION, 0) << 20;
+        args = BatchRunner.withoutOptions(args);
+        if (args.length < 4 || args.length > 7) {
+            System.err.println("Please input: java BM25 <index-directory> <queries-file> <output-file-name> <Stem/No> [k] [exhaustive/wand/bmw/saat] [postings limit or deadline, e.g. 50000 or 20ms] [--threads=N] [--postings-cache-mb=N] [--metrics=<file>]");
         }
 
         String indexDir = args[0];
@@ -28,61 +42,89 @@ public class BM25 {
         if(PorterStemmer.equalsIgnoreCase("Stem")) {
             stem = true;
         }
+        int k = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_K;
+        String mode = args.length > 5 ? args[5] : "exhaustive";
 
-        ArrayList<Integer> docLengths = loadDocLengths(indexDir + "/doc-lengths.ser");
-        int totalDocs = docLengths.size();
-        double averageDocLength = calculateAverageDocumentLength(docLengths);
-
-        Map<String, Integer> lexicon = loadLexicon(indexDir + "/lexicon.ser");
-        System.out.println(lexicon.size());
-        Map<Integer, List<List<Integer>>> invertedIndex = loadInvertedIndex(indexDir + "/invertedIndex.ser");
-        System.out.println(invertedIndex.get(0));
-        Map<Integer, List<Integer>> queryMap = readAndConvertQueries(queriesFile, lexicon, stem);
-        List<Map<String, String>> metaData = loadMetaData(indexDir + "/metadata.ser");
-        processQueries(queryMap, invertedIndex, metaData, totalDocs, averageDocLength, outputFile, docLengths);
-
-    }
-
-    @SuppressWarnings("unchecked")
-    public static Map<String, Integer> loadLexicon(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (Map<String, Integer>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        SegmentedIndex index;
+        DocLengths docLengths;
+        try {
+            index = new SegmentedIndex(indexDir);
+            docLengths = index.openDocLengths();
+        } catch (IOException e) {
             e.printStackTrace();
-            return null;
+            return;
+        }
+        stem = index.getAnalyzer(stem).isStemming();
+        if (mode.equalsIgnoreCase("saat")) {
+            long postingsBudget = Long.MAX_VALUE;
+            long deadlineNanos = 0;
+            if (args.length > 6) {
+                if (args[6].endsWith("ms")) {
+                    deadlineNanos = Long.parseLong(args[6].substring(0, args[6].length() - 2)) * 1000000;
+                } else {
+                    postingsBudget = Long.parseLong(args[6]);
+                }
+            }
+            try {
+                ImpactIndex impactIndex = new ImpactIndex(index, indexDir);
+                long start = Metrics.start();
+                Map<Integer, List<String>> queryTokens = readQueryTokens(queriesFile, stem);
+                PARSE_TIMER.stopPhase(start);
+                processQueries(queryTokens, impactIndex, postingsBudget, deadlineNanos, index, outputFile, k,
+                        threads);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            Metrics.write(metricsFile);
+            return;
         }
-    }
 
-    @SuppressWarnings("unchecked")
-    public static Map<Integer, List<List<Integer>>> loadInvertedIndex(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (Map<Integer, List<List<Integer>>>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
+        if (mode.equalsIgnoreCase("wand") || mode.equalsIgnoreCase("bmw")) {
+            try {
+                WandSearch engine = new WandSearch(index, docLengths);
+                long start = Metrics.start();
+                Map<Integer, List<String>> queryTokens = readQueryTokens(queriesFile, stem);
+                PARSE_TIMER.stopPhase(start);
+                processQueries(queryTokens, engine, mode.equalsIgnoreCase("bmw"), index, outputFile, k, threads);
+                System.out.println("Scored " + engine.getPostingsScored() + " postings, decoded "
+                        + engine.getBlocksDecoded() + " blocks");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            Metrics.write(metricsFile);
+            return;
         }
-    }
 
-    @SuppressWarnings("unchecked")
-    public static ArrayList<Integer> loadDocLengths(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (ArrayList<Integer>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        try {
+            BM25Scorer scorer = new BM25Scorer(index, docLengths, postingsCacheBytes);
+            long start = Metrics.start();
+            Map<Integer, List<String>> queryTokens = readQueryTokens(queriesFile, stem);
+            PARSE_TIMER.stopPhase(start);
+            processQueries(queryTokens, scorer, index, outputFile, k, threads);
+            if (scorer.getPostingsCache() != null) {
+                System.out.println(scorer.getPostingsCache());
+            }
+        } catch (IOException e) {
             e.printStackTrace();
-            return null;
         }
+        Metrics.write(metricsFile);
+
     }
 
-    public static double calculateAverageDocumentLength(ArrayList<Integer> docLengths) {
+    private static Metrics.Histogram latency(String mode) {
+        return Metrics.histogram("query", "mode", mode, "Query latency from termIds to run lines");
+    }
+
+    public static double calculateAverageDocumentLength(DocLengths docLengths) {
         double totalLength = 0;
-        for (int length : docLengths) {
-            totalLength += length;
+        for (int docId = 0; docId < docLengths.size(); docId++) {
+            totalLength += docLengths.get(docId);
         }
         return totalLength / docLengths.size();
     }
 
-    public static Map<Integer, List<Integer>> readAndConvertQueries(String fileName, Map<String, Integer> lexicon, boolean stem) {
-        Map<Integer, List<Integer>> queryMap = new HashMap<>();
+    public static Map<Integer, List<String>> readQueryTokens(String fileName, boolean stem) {
+        Map<Integer, List<String>> queryMap = new HashMap<>();
         try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
             String line;
             int lineCount = 0;
@@ -92,9 +134,7 @@ public class BM25 {
                 if (lineCount % 2 != 0) {
                     currentTopicNumber = Integer.parseInt(line.trim());
                 } else {
-                    List<String> tokens = tokenize(line, stem);
-                    List<Integer> termIds = convertTokenToIDs(tokens, lexicon);
-                    queryMap.put(currentTopicNumber, termIds);
+                    queryMap.put(currentTopicNumber, tokenize(line, stem));
                 }
             }
         } catch (IOException e) {
@@ -104,136 +144,141 @@ public class BM25 {
     }
 
     public static List<String> tokenize(String text, boolean stem) {
+        return Analyzer.get(stem).tokenize(text);
+    }
 
-        List<String> tokens = new ArrayList<>();
-        text = text.toLowerCase();
-        int start = 0;
-
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-
-            if (!Character.isLetterOrDigit(c)) {
-                if (start != i) {
-                    String token = text.substring(start, i);
-                    if (stem) {
-                        token = PorterStemmer.stem(token);
-                    }
-                    tokens.add(token);
-                }
-
-                start = i + 1;
-            }
-        }
-
-        if (start != text.length()) {
-            String token = text.substring(start, text.length());
-            if (stem) {
-                token = PorterStemmer.stem(token);
+    public static void processQueries(Map<Integer, List<String>> queryTokens, BM25Scorer scorer,
+            SegmentedIndex index, String outputFile, int k, int threads) {
+        ArrayList<Integer> keys = new ArrayList<Integer>(queryTokens.keySet());
+        Collections.sort(keys);
+        ThreadLocal<BM25Scorer> scorers = ThreadLocal.withInitial(scorer::copy);
+        ThreadLocal<TopKHeap> heaps = ThreadLocal.withInitial(() -> new TopKHeap(k));
+        LongAdder searchNanos = new LongAdder();
+        String outputText = BatchRunner.run(keys, threads, queryId -> {
+            TopKHeap topDocs = heaps.get();
+            BM25Scorer queryScorer = scorers.get();
+            long start = System.nanoTime();
+            queryScorer.search(queryTokens.get(queryId), topDocs);
+            long formatStart = System.nanoTime();
+            searchNanos.add(formatStart - start);
+            String lines = formatBM25Output(queryId, topDocs, index);
+            FORMAT_TIMER.stop(formatStart);
+            if (Metrics.enabled) {
+                long elapsed = System.nanoTime() - start;
+                EXHAUSTIVE_LATENCY.record(elapsed);
+                Metrics.queryEvent("exhaustive", queryId, elapsed, queryScorer.getLastPostings(),
+                        queryScorer.getLastCandidates(), topDocs.size());
             }
-            tokens.add(token);
-        }
-
-        return tokens;
+            return lines;
+        });
+        long start = Metrics.start();
+        saveOutput(outputText, outputFile);
+        WRITE_TIMER.stopPhase(start);
+        System.out.printf("Scored %d postings in %.1f ms (%.1f million postings/sec)%n", scorer.getPostingsScored(),
+                searchNanos.sum() / 1e6, scorer.getPostingsScored() * 1e3 / Math.max(1, searchNanos.sum()));
     }
 
-    public static List<Integer> convertTokenToIDs(List<String> tokens, Map<String, Integer> lexicon) {
-        List<Integer> tokenIDs = new ArrayList<>();
-
-        for (String token : tokens) {
-            if (lexicon.containsKey(token)) {
-                tokenIDs.add(lexicon.get(token));
-            } else {
-                int id = lexicon.size();
-                lexicon.put(token, id);
-                tokenIDs.add(id);
+    public static void processQueries(Map<Integer, List<String>> queryTokens, WandSearch engine, boolean blockMax,
+            SegmentedIndex index, String outputFile, int k, int threads) {
+        ArrayList<Integer> keys = new ArrayList<Integer>(queryTokens.keySet());
+        Collections.sort(keys);
+        ThreadLocal<TopKHeap> heaps = ThreadLocal.withInitial(() -> new TopKHeap(k));
+        String outputText = BatchRunner.run(keys, threads, queryId -> {
+            TopKHeap topDocs = heaps.get();
+            long start = Metrics.start();
+            engine.search(queryTokens.get(queryId), blockMax, topDocs);
+            long formatStart = Metrics.start();
+            String lines = formatBM25Output(queryId, topDocs, index);
+            FORMAT_TIMER.stop(formatStart);
+            if (Metrics.enabled) {
+                long elapsed = System.nanoTime() - start;
+                (blockMax ? BMW_LATENCY : WAND_LATENCY).record(elapsed);
+                Metrics.queryEvent(blockMax ? "bmw" : "wand", queryId, elapsed, -1, -1, topDocs.size());
             }
-        }
-
-        return tokenIDs;
+            return lines;
+        });
+        long start = Metrics.start();
+        saveOutput(outputText, outputFile);
+        WRITE_TIMER.stopPhase(start);
     }
 
-    public static void processQueries(Map<Integer, List<Integer>> queryMap,
-            Map<Integer, List<List<Integer>>> invertedIndex, List<Map<String, String>> metaData, int totalDocs,
-            double averageDocLength, String outputFile, List<Integer> docLengths) {
-        String outputText = "";
-        ArrayList<Integer> keys = new ArrayList<Integer>(queryMap.keySet());
+    public static void processQueries(Map<Integer, List<String>> queryTokens, ImpactIndex impactIndex,
+            long postingsBudget, long deadlineNanos, SegmentedIndex index, String outputFile, int k, int threads) {
+        ArrayList<Integer> keys = new ArrayList<Integer>(queryTokens.keySet());
         Collections.sort(keys);
-        for (Integer queryId : keys) {
-            List<Integer> termIds = queryMap.get(queryId);
-            Map<Integer, Double> docScores = new HashMap<>();
-
-            for (Integer termId : termIds) {
-                List<List<Integer>> postingsList = invertedIndex.get(termId);
-                if (postingsList != null) {
-                    for (List<Integer> posting : postingsList) {
-                        int docId = posting.get(0);
-                        int tf = posting.get(1);
-                        int df = postingsList.size();
-                        int docLength = docLengths.get(docId);
-                        double score = calculateBM25Score(tf, df, docLength, totalDocs, averageDocLength);
-                        docScores.put(docId, docScores.getOrDefault(docId, 0.0) + score);
-                    }
-                }
+        ThreadLocal<ImpactIndex> impactIndexes = ThreadLocal.withInitial(impactIndex::copy);
+        ThreadLocal<TopKHeap> heaps = ThreadLocal.withInitial(() -> new TopKHeap(k));
+        long[] latencies = new long[keys.size()];
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            positions.put(keys.get(i), i);
+        }
+        String outputText = BatchRunner.run(keys, threads, queryId -> {
+            TopKHeap topDocs = heaps.get();
+            long start = System.nanoTime();
+            impactIndexes.get().search(queryTokens.get(queryId), postingsBudget,
+                    deadlineNanos > 0 ? start + deadlineNanos : 0, topDocs);
+            long formatStart = System.nanoTime();
+            latencies[positions.get(queryId)] = formatStart - start;
+            String lines = formatBM25Output(queryId, topDocs, index);
+            FORMAT_TIMER.stop(formatStart);
+            if (Metrics.enabled) {
+                long elapsed = System.nanoTime() - start;
+                SAAT_LATENCY.record(elapsed);
+                Metrics.queryEvent("saat", queryId, elapsed, -1, -1, topDocs.size());
             }
+            return lines;
+        });
+        long start = Metrics.start();
+        saveOutput(outputText, outputFile);
+        WRITE_TIMER.stopPhase(start);
 
-            List<Map.Entry<Integer, Double>> sortedDocs = new ArrayList<>(docScores.entrySet());
-            sortedDocs.sort(Map.Entry.<Integer, Double>comparingByValue().reversed());
-
-            int rankCounter = 1;
-            for (Map.Entry<Integer, Double> entry : sortedDocs) {
-                if (rankCounter <= 1000) {
-                    outputText += formatBM25Output(queryId, Collections.singletonList(entry ), metaData, rankCounter);
-                    rankCounter++;
-                } else {
-                    break;
-                }
+        Arrays.sort(latencies);
+        if (latencies.length > 0) {
+            long total = 0;
+            for (long latency : latencies) {
+                total += latency;
             }
+            System.out.printf("%d queries: mean %.3f ms, p99 %.3f ms, max %.3f ms; %d postings, %d queries cut short%n",
+                    latencies.length, total / 1e6 / latencies.length,
+                    latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e6,
+                    latencies[latencies.length - 1] / 1e6, impactIndex.getPostingsProcessed(),
+                    impactIndex.getTruncatedQueries());
         }
-        saveOutput(outputText, outputFile);
     }
 
-    @SuppressWarnings("unchecked")
-    public static List<Map<String, String>> loadMetaData(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (List<Map<String, String>>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
+    public static double calculateBM25Score(int tf, int df, int docLength, int totalDocs, double averageDocLength) {
+        double idf = calculateIdf(df, totalDocs);
+        double tfComponent = tf / (tf + calculateLengthNorm(docLength, averageDocLength));
+        return idf * tfComponent;
     }
 
-    public static double calculateBM25Score(int tf, int df, int docLength, int totalDocs, double averageDocLength) {
+    public static double calculateIdf(int df, int totalDocs) {
+        return Math.log((totalDocs - df + 0.5) / (df + 0.5));
+    }
+
+    public static double calculateLengthNorm(int docLength, double averageDocLength) {
         double k1 = 1.2;
         double b = 0.75;
-        double idf = Math.log((totalDocs - df + 0.5) / (df + 0.5));
-        double tfComponent = tf / (tf + k1 * (1 - b + b * docLength / averageDocLength));
-        return idf * tfComponent;
+        return k1 * (1 - b + b * docLength / averageDocLength);
     }
 
-    public static String formatBM25Output(Integer queryId, List<Map.Entry<Integer, Double>> sortedDocs,
-            List<Map<String, String>> metaData, int rank) {
-        String output = "";
-        int count = 0;
-        for (Map.Entry<Integer, Double> entry : sortedDocs) {
-            int docId = entry.getKey();
-            double score = entry.getValue();
-            String docno = getDocNoFromMetaData(docId, metaData);
-            output += queryId + " Q0 " + docno + " " + rank + " " + score + " a7bhanjiBM25\n";
-            count++;
-            if(count >= 1000) {
-                break;
-            }
+    public static String formatBM25Output(Integer queryId, TopKHeap topDocs, SegmentedIndex index) {
+        StringBuilder output = new StringBuilder();
+        for (int rank = 1; rank <= topDocs.size(); rank++) {
+            output.append(formatBM25Output(queryId, topDocs.getDocId(rank - 1), topDocs.getScore(rank - 1), index,
+                    rank));
         }
-        return output;
+        return output.toString();
     }
 
-    public static String getDocNoFromMetaData(int docid, List<Map<String, String>> metaData) {
-        for (Map<String, String> docMetaData : metaData) {
-            if (docMetaData.get("id").equals(String.valueOf(docid))) {
-                return docMetaData.get("DOCNO");
-            }
-        }
-        return null;
+    public static String formatBM25Output(Integer queryId, int docId, double score, SegmentedIndex index,
+            int rank) {
+        return queryId + " Q0 " + getDocNoFromMetaData(docId, index) + " " + rank + " " + score + " a7bhanjiBM25\n";
+    }
+
+    public static String getDocNoFromMetaData(int docid, SegmentedIndex index) {
+        return index.getDocNo(docid);
     }
 
     public static void saveOutput(String outputText, String outputFile) {
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Term-at-a-time BM25 over every segment's compressed postings, which stay mapped rather than on the
+ * heap. A query term is looked up in every segment's mapped dictionary, which gives its local termId, df
+ * and postings offset, and its idf comes from the summed df. The length normalization
+ * k1 * (1 - b + b * dl / avgdl) of every document is computed once when the scorer is opened, so a posting
+ * costs one division and one multiply-add into a dense accumulator array. The accumulators and the list
+ * of documents a query touched are reused across queries; only the touched entries are reset. copy()
+ * shares the tables with a scorer that has its own accumulators, one per thread. Scores are the same
+ * doubles calculateBM25Score gives.
+ * With a postings cache, the decoded docids and tfs of lists at least a block long are kept per segment
+ * and local termId, so a hot term is not decoded again for every query that uses it.
+ * With metrics on, decoding and scoring are timed a block at a time, top-k selection once a query.
+ */
+public class BM25Scorer {
+
+    private static final int MIN_CACHED_DF = PostingsCodec.BLOCK_SIZE;
+
+    private static final Metrics.Timer DECODE_TIMER = Metrics.timer("bm25_decode");
+    private static final Metrics.Timer SCORE_TIMER = Metrics.timer("bm25_score");
+    private static final Metrics.Timer SELECT_TIMER = Metrics.timer("bm25_select");
+    private static final Metrics.Counter POSTINGS_SCORED = Metrics.counter("bm25_postings_scored",
+            "Postings scored by exhaustive BM25");
+    private static final Metrics.Counter CANDIDATES = Metrics.counter("bm25_candidates",
+            "Documents given a BM25 score");
+
+    private final int[] docBases;
+    private final TermDictionary[] dictionaries;
+    private final ByteBuffer[] postings;
+    private final double[] lengthNorms;
+
+    private final double[] accumulators;
+    private final boolean[] seen;
+    private final int[] touched;
+    private final int[] docIds = new int[PostingsCodec.BLOCK_SIZE];
+    private final int[] tfs = new int[PostingsCodec.BLOCK_SIZE];
+    private final int[] position = new int[1];
+    private final TermDictionary.Entry[] entries;
+
+    private final LongAdder postingsScored;
+    private final LruCache<Long, int[][]> postingsCache;
+    private long lastPostings;
+    private int lastCandidates;
+
+    public BM25Scorer(SegmentedIndex index, DocLengths docLengths) throws IOException {
+        this(index, docLengths, 0);
+    }
+
+    public BM25Scorer(SegmentedIndex index, DocLengths docLengths, long postingsCacheBytes) throws IOException {
+        int segmentCount = index.getSegmentCount();
+        int totalDocs = docLengths.size();
+        docBases = new int[segmentCount];
+        dictionaries = new TermDictionary[segmentCount];
+        postings = new ByteBuffer[segmentCount];
+        for (int segment = 0; segment < segmentCount; segment++) {
+            docBases[segment] = index.getDocBase(segment);
+            dictionaries[segment] = index.getDictionary(segment);
+            postings[segment] = PostingsCodec.map(index.getSegmentDir(segment), PostingsCodec.POSTINGS_FILE);
+        }
+
+        double averageDocLength = BM25.calculateAverageDocumentLength(docLengths);
+        lengthNorms = new double[totalDocs];
+        for (int docId = 0; docId < totalDocs; docId++) {
+            lengthNorms[docId] = BM25.calculateLengthNorm(docLengths.get(docId), averageDocLength);
+        }
+
+        accumulators = new double[totalDocs];
+        seen = new boolean[totalDocs];
+        touched = new int[totalDocs];
+        entries = new TermDictionary.Entry[segmentCount];
+        postingsScored = new LongAdder();
+        postingsCache = postingsCacheBytes > 0 ? new LruCache<>("postings", postingsCacheBytes,
+                postings -> 4L * (postings[0].length + postings[1].length)) : null;
+    }
+
+    private BM25Scorer(BM25Scorer shared) {
+        docBases = shared.docBases;
+        dictionaries = shared.dictionaries;
+        postings = shared.postings;
+        lengthNorms = shared.lengthNorms;
+        accumulators = new double[lengthNorms.length];
+        seen = new boolean[lengthNorms.length];
+        touched = new int[lengthNorms.length];
+        entries = new TermDictionary.Entry[docBases.length];
+        postingsScored = shared.postingsScored;
+        postingsCache = shared.postingsCache;
+    }
+
+    public BM25Scorer copy() {
+        return new BM25Scorer(this);
+    }
+
+    public long getPostingsScored() {
+        return postingsScored.sum();
+    }
+
+    public LruCache<Long, int[][]> getPostingsCache() {
+        return postingsCache;
+    }
+
+    public long getLastPostings() {
+        return lastPostings;
+    }
+
+    public int getLastCandidates() {
+        return lastCandidates;
+    }
+
+    public void search(List<String> terms, TopKHeap topDocs) {
+        int touchedCount = 0;
+        lastPostings = 0;
+        for (String term : terms) {
+            int df = 0;
+            for (int segment = 0; segment < docBases.length; segment++) {
+                entries[segment] = dictionaries[segment].lookup(term);
+                if (entries[segment] != null) {
+                    df += entries[segment].getDf();
+                }
+            }
+            if (df == 0) {
+                continue;
+            }
+            double idf = BM25.calculateIdf(df, lengthNorms.length);
+            for (int segment = 0; segment < docBases.length; segment++) {
+                if (entries[segment] != null) {
+                    touchedCount = scoreTerm(segment, entries[segment], idf, touchedCount);
+                }
+            }
+        }
+
+        lastCandidates = touchedCount;
+        POSTINGS_SCORED.add(lastPostings);
+        CANDIDATES.add(touchedCount);
+        long start = Metrics.start();
+        topDocs.clear();
+        if (touchedCount > accumulators.length / 8) {
+            for (int docId = 0; docId < accumulators.length; docId++) {
+                if (seen[docId]) {
+                    topDocs.offer(docId, accumulators[docId]);
+                    accumulators[docId] = 0;
+                    seen[docId] = false;
+                }
+            }
+        } else {
+            Arrays.sort(touched, 0, touchedCount);
+            for (int i = 0; i < touchedCount; i++) {
+                int docId = touched[i];
+                topDocs.offer(docId, accumulators[docId]);
+                accumulators[docId] = 0;
+                seen[docId] = false;
+            }
+        }
+        topDocs.sortDescending();
+        SELECT_TIMER.stop(start);
+    }
+
+    private int scoreTerm(int segment, TermDictionary.Entry entry, double idf, int touchedCount) {
+        int df = entry.getDf();
+        postingsScored.add(df);
+        lastPostings += df;
+        if (postingsCache != null && df >= MIN_CACHED_DF) {
+            Long key = (long) segment << 32 | entry.getTermId();
+            long start = Metrics.start();
+            int[][] postings = postingsCache.get(key);
+            if (postings == null) {
+                postings = new int[][] { new int[df], new int[df] };
+                decode(segment, entry.getPostingsOffset(), postings[0], postings[1]);
+                postingsCache.put(key, postings);
+            }
+            DECODE_TIMER.stop(start);
+            start = Metrics.start();
+            touchedCount = accumulate(postings[0], postings[1], df, idf, touchedCount);
+            SCORE_TIMER.stop(start);
+            return touchedCount;
+        }
+
+        ByteBuffer bytes = postings[segment];
+        position[0] = (int) entry.getPostingsOffset();
+        int docId = docBases[segment];
+        for (int blockStart = 0; blockStart < df; blockStart += PostingsCodec.BLOCK_SIZE) {
+            int blockLength = Math.min(PostingsCodec.BLOCK_SIZE, df - blockStart);
+            long start = Metrics.start();
+            for (int i = 0; i < blockLength; i++) {
+                docId += PostingsCodec.readVInt(bytes, position);
+                docIds[i] = docId;
+            }
+            for (int i = 0; i < blockLength; i++) {
+                tfs[i] = PostingsCodec.readVInt(bytes, position);
+            }
+            DECODE_TIMER.stop(start);
+            start = Metrics.start();
+            touchedCount = accumulate(docIds, tfs, blockLength, idf, touchedCount);
+            SCORE_TIMER.stop(start);
+        }
+        return touchedCount;
+    }
+
+    private void decode(int segment, long offset, int[] allDocIds, int[] allTfs) {
+        ByteBuffer bytes = postings[segment];
+        int df = allDocIds.length;
+        int[] cursor = { (int) offset };
+        int docId = docBases[segment];
+        for (int blockStart = 0; blockStart < df; blockStart += PostingsCodec.BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + PostingsCodec.BLOCK_SIZE, df);
+            for (int i = blockStart; i < blockEnd; i++) {
+                docId += PostingsCodec.readVInt(bytes, cursor);
+                allDocIds[i] = docId;
+            }
+            for (int i = blockStart; i < blockEnd; i++) {
+                allTfs[i] = PostingsCodec.readVInt(bytes, cursor);
+            }
+        }
+    }
+
+    private int accumulate(int[] docIds, int[] tfs, int length, double idf, int touchedCount) {
+        for (int i = 0; i < length; i++) {
+            int doc = docIds[i];
+            if (!seen[doc]) {
+                seen[doc] = true;
+                touched[touchedCount++] = doc;
+            }
+            accumulators[doc] += idf * (tfs[i] / (tfs[i] + lengthNorms[doc]));
+        }
+        return touchedCount;
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/*
+ * Runs the topics of a batch on a ForkJoinPool against one shared read-only index. Each topic returns its
+ * own slice of the run file and the slices are joined in topic order, so the output does not depend on
+ * the number of threads or on scheduling. A topic that throws fails the whole batch rather than leaving a
+ * gap in the run file. Engines that keep scratch state give every worker its own copy through a
+ * ThreadLocal.
+ */
+public class BatchRunner {
+
+    static final String THREADS_OPTION = "--threads=";
+
+    public static int parseThreads(String[] args) {
+        return parseThreads(args, 1);
+    }
+
+    public static int parseThreads(String[] args, int defaultThreads) {
+        return (int) Math.max(1, parseOption(args, THREADS_OPTION, defaultThreads));
+    }
+
+    public static long parseOption(String[] args, String option, long defaultValue) {
+        String value = optionValue(args, option);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static String optionValue(String[] args, String option) {
+        for (String arg : args) {
+            if (arg.startsWith(option)) {
+                return arg.substring(option.length());
+            }
+        }
+        return null;
+    }
+
+    public static String[] withoutOptions(String[] args) {
+        List<String> positional = new ArrayList<>(Arrays.asList(args));
+        positional.removeIf(arg -> arg.startsWith("--"));
+        return positional.toArray(new String[0]);
+    }
+
+    public static String run(List<Integer> queryIds, int threads, Function<Integer, String> topic) {
+        String[] outputs = new String[queryIds.size()];
+        long start = System.nanoTime();
+        if (threads <= 1) {
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = topic.apply(queryIds.get(i));
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> IntStream.range(0, outputs.length).parallel()
+                        .forEach(i -> outputs[i] = topic.apply(queryIds.get(i)))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("the batch was interrupted", e);
+            } catch (ExecutionException e) {
+                // a run file with a topic missing would look complete, so a failed topic fails the batch
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d topics on %d thread(s) in %.1f ms (%.1f queries/sec)%n", outputs.length, threads,
+                seconds * 1e3, outputs.length / seconds);
+
+        StringBuilder output = new StringBuilder();
+        for (String topicOutput : outputs) {
+            output.append(topicOutput);
+        }
+        return output.toString();
+    }
+}
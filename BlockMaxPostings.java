@@ -0,0 +1,258 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Document-at-a-time access to one segment's postings. Each term's blocks carry the last docid, the byte
+ * length, the max tf and the min document length from postings-blocks.bin, so a cursor can skip whole
+ * blocks and bound their BM25 score without decoding them. The postings and block entries stay mapped;
+ * opening a segment reads only the per-term offsets, and opening a cursor copies its term's block entries,
+ * with the byte lengths turned into start offsets. Cursors gallop over the last docids, so skipping k
+ * blocks costs O(log k). Segments written before postings-blocks.bin existed get the same entries
+ * computed from the postings when they are opened.
+ */
+public class BlockMaxPostings {
+
+    private static final int BLOCK_ENTRY_BYTES = 16;
+
+    private final ByteBuffer postings;
+    private final long[] termOffsets;
+    private final int[] dfs;
+    private final int[] firstBlocks;
+    private final ByteBuffer blocks;
+
+    public BlockMaxPostings(String indexDir, DocLengths docLengths, int docBase) throws IOException {
+        postings = PostingsCodec.map(indexDir, PostingsCodec.POSTINGS_FILE);
+        int blockCount = 0;
+        try (DataInputStream offsetsIn = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(indexDir + "/" + PostingsCodec.OFFSETS_FILE)))) {
+            int termCount = offsetsIn.readInt();
+            termOffsets = new long[termCount];
+            dfs = new int[termCount];
+            firstBlocks = new int[termCount + 1];
+            for (int termId = 0; termId < termCount; termId++) {
+                termOffsets[termId] = offsetsIn.readLong();
+                dfs[termId] = offsetsIn.readInt();
+                firstBlocks[termId] = blockCount;
+                blockCount += (dfs[termId] + PostingsCodec.BLOCK_SIZE - 1) / PostingsCodec.BLOCK_SIZE;
+            }
+            firstBlocks[termCount] = blockCount;
+        }
+
+        if (new File(indexDir, PostingsCodec.BLOCKS_FILE).exists()) {
+            blocks = PostingsCodec.map(indexDir, PostingsCodec.BLOCKS_FILE);
+        } else {
+            blocks = computeBlocks(blockCount, docLengths, docBase);
+        }
+    }
+
+    private ByteBuffer computeBlocks(int blockCount, DocLengths docLengths, int docBase) {
+        ByteBuffer computed = ByteBuffer.allocate(blockCount * BLOCK_ENTRY_BYTES);
+        int[] position = new int[1];
+        int[] tfs = new int[PostingsCodec.BLOCK_SIZE];
+        for (int termId = 0; termId < dfs.length; termId++) {
+            position[0] = (int) termOffsets[termId];
+            int docId = 0;
+            for (int block = firstBlocks[termId]; block < firstBlocks[termId + 1]; block++) {
+                int blockStart = position[0];
+                int length = Math.min(PostingsCodec.BLOCK_SIZE, dfs[termId] - (block - firstBlocks[termId])
+                        * PostingsCodec.BLOCK_SIZE);
+                int minDocLength = Integer.MAX_VALUE;
+                for (int i = 0; i < length; i++) {
+                    docId += PostingsCodec.readVInt(postings, position);
+                    minDocLength = Math.min(minDocLength, docLengths.get(docBase + docId));
+                }
+                int maxTf = 0;
+                for (int i = 0; i < length; i++) {
+                    tfs[i] = PostingsCodec.readVInt(postings, position);
+                    maxTf = Math.max(maxTf, tfs[i]);
+                }
+                computed.putInt(docId).putInt(position[0] - blockStart).putInt(maxTf).putInt(minDocLength);
+            }
+        }
+        return computed;
+    }
+
+    public int getTermCount() {
+        return dfs.length;
+    }
+
+    public int getDf(int termId) {
+        return dfs[termId];
+    }
+
+    // the number of blocks before the term's first block, which numbers its entries in per-block files
+    public int getFirstBlock(int termId) {
+        return firstBlocks[termId];
+    }
+
+    public Cursor open(int termId) {
+        return new Cursor(termId);
+    }
+
+    public class Cursor implements DocIdIterator {
+
+        private final int df;
+        private final int lastBlock;
+        private final int[] lastDocIds;
+        private final int[] blockStarts;
+        private final int[] maxTfs;
+        private final int[] minDocLengths;
+        private int block = 0;
+        private final int[] docIds = new int[PostingsCodec.BLOCK_SIZE];
+        private final int[] tfs = new int[PostingsCodec.BLOCK_SIZE];
+        private int decodedBlock = -1;
+        private int index = 0;
+        private int docId;
+        private int blocksDecoded = 0;
+
+        Cursor(int termId) {
+            df = dfs[termId];
+            int blockCount = firstBlocks[termId + 1] - firstBlocks[termId];
+            lastBlock = blockCount - 1;
+            lastDocIds = new int[blockCount];
+            blockStarts = new int[blockCount];
+            maxTfs = new int[blockCount];
+            minDocLengths = new int[blockCount];
+            int start = (int) termOffsets[termId];
+            for (int i = 0, entry = firstBlocks[termId] * BLOCK_ENTRY_BYTES; i < blockCount; i++,
+                    entry += BLOCK_ENTRY_BYTES) {
+                lastDocIds[i] = blocks.getInt(entry);
+                blockStarts[i] = start;
+                start += blocks.getInt(entry + 4);
+                maxTfs[i] = blocks.getInt(entry + 8);
+                minDocLengths[i] = blocks.getInt(entry + 12);
+            }
+            if (df == 0) {
+                docId = END;
+            } else {
+                decode();
+                docId = docIds[0];
+            }
+        }
+
+        public int getDf() {
+            return df;
+        }
+
+        public int getBlockCount() {
+            return lastBlock + 1;
+        }
+
+        public int getMaxTf(int termBlock) {
+            return maxTfs[termBlock];
+        }
+
+        public int getMinDocLength(int termBlock) {
+            return minDocLengths[termBlock];
+        }
+
+        public int getBlocksDecoded() {
+            return blocksDecoded;
+        }
+
+        public int docId() {
+            return docId;
+        }
+
+        public int tf() {
+            return tfs[index];
+        }
+
+        public int indexInBlock() {
+            return index;
+        }
+
+        public int blockTf(int blockPosting) {
+            return tfs[blockPosting];
+        }
+
+        public void next() {
+            if (docId == END) {
+                return;
+            }
+            if (++index < blockPostings()) {
+                docId = docIds[index];
+            } else if (block < lastBlock) {
+                block++;
+                decode();
+                docId = docIds[0];
+            } else {
+                docId = END;
+            }
+        }
+
+        public void advance(int target) {
+            if (docId >= target) {
+                return;
+            }
+            shallowAdvance(target);
+            if (lastDocIds[block] < target) {
+                docId = END;
+                return;
+            }
+            if (decodedBlock != block) {
+                decode();
+            }
+            while (docIds[index] < target) {
+                index++;
+            }
+            docId = docIds[index];
+        }
+
+        public void shallowAdvance(int target) {
+            if (block == lastBlock || lastDocIds[block] >= target) {
+                return;
+            }
+            int low = block;
+            int high = block + 1;
+            int step = 1;
+            while (high < lastBlock && lastDocIds[high] < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            high = Math.min(high, lastBlock);
+            while (low + 1 < high) {
+                int middle = (low + high) >>> 1;
+                if (lastDocIds[middle] < target) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            block = high;
+        }
+
+        public int blockLastDocId() {
+            return lastDocIds[block];
+        }
+
+        public int blockIndex() {
+            return block;
+        }
+
+        private int blockPostings() {
+            return Math.min(PostingsCodec.BLOCK_SIZE, df - block * PostingsCodec.BLOCK_SIZE);
+        }
+
+        private void decode() {
+            int[] position = { blockStarts[block] };
+            int length = blockPostings();
+            int previous = block == 0 ? 0 : lastDocIds[block - 1];
+            for (int i = 0; i < length; i++) {
+                previous += PostingsCodec.readVInt(postings, position);
+                docIds[i] = previous;
+            }
+            for (int i = 0; i < length; i++) {
+                tfs[i] = PostingsCodec.readVInt(postings, position);
+            }
+            decodedBlock = block;
+            index = 0;
+            blocksDecoded++;
+        }
+    }
+}
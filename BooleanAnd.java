@@ -3,68 +3,69 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.io.File;
-import java.io.FileInputStream;
+import java.util.concurrent.atomic.LongAdder;
 
 public class BooleanAnd {
 
+    private static final Metrics.Timer PARSE_TIMER = Metrics.timer("and_parse");
+    private static final Metrics.Timer PLAN_TIMER = Metrics.timer("and_plan");
+    private static final Metrics.Timer TRAVERSE_TIMER = Metrics.timer("and_traverse");
+    private static final Metrics.Timer FORMAT_TIMER = Metrics.timer("and_format");
+    private static final Metrics.Timer WRITE_TIMER = Metrics.timer("and_write");
+    private static final Metrics.Counter CANDIDATES = Metrics.counter("and_candidates",
+            "Planner estimate of the documents each Boolean query had to consider");
+    private static final Metrics.Counter RESULTS = Metrics.counter("and_results", "Documents matched");
+    private static final Metrics.Histogram LATENCY = Metrics.histogram("query", "mode", "and",
+            "Query latency from termIds to run lines");
+
     public static void main(String[] args) {
-        if (args.length != 3) {
-            System.err.println("Please input: java BooleanAND <index-directory> <queries-file> <output-file-name");
+        int threads = BatchRunner.parseThreads(args);
+        String metricsFile = Metrics.enable(args);
+        args = BatchRunner.withoutOptions(args);
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Please input: java BooleanAND <index-directory> <queries-file> <output-file-name> [plan/noplan] [--threads=N] [--metrics=<file>]");
         }
 
         String indexDir = args[0];
         String queriesFile = args[1];
         String outputFile = args[2];
-
-        Map<String, Integer> lexicon = loadLexicon(indexDir + "/lexicon.ser");
-        Map<Integer, List<List<Integer>>> invertedIndex = loadInvertedIndex(indexDir + "/invertedIndex.ser");
-        Map<Integer, List<Integer>> queryMap = readAndConvertQueries(queriesFile, lexicon);
-        List<Map<String, String>> metaData = loadMetaData(indexDir + "/metadata.ser");
-        processQueries(queryMap, invertedIndex, metaData, outputFile);
-
-    }
-
-    @SuppressWarnings("unchecked")
-    public static Map<String, Integer> loadLexicon(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (Map<String, Integer>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    public static Map<Integer, List<List<Integer>>> loadInvertedIndex(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (Map<Integer, List<List<Integer>>>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        boolean planned = args.length < 4 || !args[3].equalsIgnoreCase("noplan");
+
+        try {
+            SegmentedIndex index = new SegmentedIndex(indexDir);
+            BooleanSearch engine = new BooleanSearch(index, index.openDocLengths());
+            long start = Metrics.start();
+            Map<Integer, BooleanQuery> queries = readBooleanQueries(queriesFile,
+                    index.getAnalyzer(false).isStemming());
+            PARSE_TIMER.stopPhase(start);
+            processQueries(queries, engine, planned, index, outputFile, threads);
+        } catch (IOException e) {
             e.printStackTrace();
-            return null;
         }
+        Metrics.write(metricsFile);
     }
 
-    public static Map<Integer, List<Integer>> readAndConvertQueries(String fileName, Map<String, Integer> lexicon) {
-        Map<Integer, List<Integer>> queryMap = new HashMap<>();
+    public static Map<Integer, BooleanQuery> readBooleanQueries(String fileName, boolean stem) {
+        Map<Integer, BooleanQuery> queryMap = new HashMap<>();
         try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
             String line;
             int lineCount = 0;
             Integer currentTopicNumber = null;
             while ((line = br.readLine()) != null) {
                 lineCount++;
-                if (lineCount % 2 != 0) { 
+                if (lineCount % 2 != 0) {
                     currentTopicNumber = Integer.parseInt(line.trim());
-                } else { 
-                    List<String> tokens = tokenize(line);
-                    List<Integer> termIds = convertTokenToIDs(tokens, lexicon);
-                    queryMap.put(currentTopicNumber, termIds);
+                } else {
+                    try {
+                        queryMap.put(currentTopicNumber, BooleanQuery.parse(line, stem));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("topic " + currentTopicNumber + ": " + e.getMessage(), e);
+                    }
                 }
             }
         } catch (IOException e) {
@@ -73,84 +74,42 @@ public class BooleanAnd {
         return queryMap;
     }
 
-    public static List<String> tokenize(String text) {
-
-        List<String> tokens = new ArrayList<>();
-        text = text.toLowerCase();
-        int start = 0;
-
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-
-            if (!Character.isLetterOrDigit(c)) {
-                if (start != i) {
-                    String token = text.substring(start, i);
-                    tokens.add(token);
-                }
-
-                start = i + 1;
-            }
-        }
-
-        if (start != text.length()) {
-            tokens.add(text.substring(start, text.length()));
-        }
-
-        return tokens;
-    }
-
-    public static List<Integer> convertTokenToIDs(List<String> tokens, Map<String, Integer> lexicon) {
-        List<Integer> tokenIDs = new ArrayList<>();
-
-        for (String token : tokens) {
-            if (lexicon.containsKey(token)) {
-                tokenIDs.add(lexicon.get(token));
-            } else {
-                int id = lexicon.size();
-                lexicon.put(token, id);
-                tokenIDs.add(id);
-            }
-        }
-
-        return tokenIDs;
-    }
-
-    public static void processQueries(Map<Integer, List<Integer>> queryMap, Map<Integer, List<List<Integer>>> invertedIndex, List<Map<String, String>> metaData, String outputFile) {
-        String outputText = "";
-        ArrayList<Integer> keys = new ArrayList<Integer>( queryMap.keySet());
+    public static void processQueries(Map<Integer, BooleanQuery> queries, BooleanSearch engine, boolean planned,
+            SegmentedIndex index, String outputFile, int threads) {
+        ArrayList<Integer> keys = new ArrayList<Integer>(queries.keySet());
         Collections.sort(keys);
-        for (Integer key : keys) {
-            Integer queryId = key;
-            List<Integer> termIds = queryMap.get(key);
-
-            List<List<List<Integer>>> queryResults = new ArrayList<>();
-
-            for (Integer termId : termIds) {
-                List<List<Integer>> postingsList = invertedIndex.get(termId);
-
-                if (postingsList != null) {
-                    queryResults.add(postingsList);
-                }
+        LongAdder searchNanos = new LongAdder();
+        String outputText = BatchRunner.run(keys, threads, queryId -> {
+            long start = System.nanoTime();
+            BooleanQuery query = planned ? engine.plan(queries.get(queryId)) : queries.get(queryId);
+            PLAN_TIMER.stop(start);
+            long traverseStart = Metrics.start();
+            List<Integer> resultSet = engine.search(query, planned);
+            long formatStart = System.nanoTime();
+            TRAVERSE_TIMER.stop(traverseStart);
+            searchNanos.add(formatStart - start);
+            String lines = formatOutput(queryId, resultSet, index);
+            FORMAT_TIMER.stop(formatStart);
+            if (Metrics.enabled) {
+                long elapsed = System.nanoTime() - start;
+                long candidates = engine.estimate(query);
+                CANDIDATES.add(candidates);
+                RESULTS.add(resultSet.size());
+                LATENCY.record(elapsed);
+                Metrics.queryEvent("and", queryId, elapsed, -1, candidates, resultSet.size());
             }
-
-            outputText += BooleanAND(queryId, queryResults, metaData);
-
-        }
+            return lines;
+        });
+        long start = Metrics.start();
         saveOutput(outputText, outputFile);
+        WRITE_TIMER.stopPhase(start);
+        System.out.printf("%d queries in %.1f ms%n", keys.size(), searchNanos.sum() / 1e6);
     }
 
-    @SuppressWarnings("unchecked")
-    public static List<Map<String, String>> loadMetaData(String pathToFile) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToFile))) {
-            return (List<Map<String, String>>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
+    // the legacy baseline: counts docids over fully loaded postings lists in a HashMap; BooleanSearch answers
+    // queries, and the query benchmark keeps this to compare against
     public static String BooleanAND(Integer queryId, List<List<List<Integer>>> queryResults,
-            List<Map<String, String>> metaData) {
+            SegmentedIndex index) {
         HashMap<Integer, Integer> docCount = new HashMap<>();
         for (List<List<Integer>> postingsList : queryResults) {
             for (int i = 0; i < postingsList.size(); i++) {
@@ -170,26 +129,22 @@ public class BooleanAnd {
                 resultSet.add(docid);
             }
         }
-        return formatOutput(queryId, resultSet, metaData);
+        return formatOutput(queryId, resultSet, index);
     }
 
-    public static String formatOutput(Integer queryId, List<Integer> resultSet, List<Map<String, String>> metaData) {
-        String output = "";
+    public static String formatOutput(Integer queryId, List<Integer> resultSet, SegmentedIndex index) {
+        StringBuilder output = new StringBuilder();
         for (int i = 0; i < resultSet.size(); i++) {
             int docid = resultSet.get(i);
-            String docno = getDocNoFromMetaData(docid, metaData); 
-            output += queryId + " Q0 " + docno + " " + (i + 1) + " " + (resultSet.size() - (i + 1)) + " a7bhanjiAND\n";
+            String docno = getDocNoFromMetaData(docid, index);
+            output.append(queryId).append(" Q0 ").append(docno).append(' ').append(i + 1).append(' ')
+                    .append(resultSet.size() - (i + 1)).append(" a7bhanjiAND\n");
         }
-        return output;
+        return output.toString();
     }
 
-    public static String getDocNoFromMetaData(int docid, List<Map<String, String>> metaData) {
-        for (Map<String, String> docMetaData : metaData) {
-            if (docMetaData.get("id").equals(String.valueOf(docid))) {
-                return docMetaData.get("DOCNO");
-            }
-        }
-        return null;
+    public static String getDocNoFromMetaData(int docid, SegmentedIndex index) {
+        return index.getDocNo(docid);
     }
 
 
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Operator tree of a Boolean query. The grammar is
+ *   or  := and ("OR" and)*
+ *   and := not ("AND"? not)*
+ *   not := "NOT" not | "(" or ")" | '"' words '"' ("~" slop)? | word
+ * so adjacent operands are ANDed and a plain line of words is a conjunction of all of them. Operators
+ * are only recognized in upper case; every other word goes through the query tokenizer, and a word that
+ * splits into several tokens becomes the AND of them. A quoted phrase matches its tokens in order at
+ * consecutive positions, or with "~k" up to k extra positions apart; it remembers whether it was stemmed
+ * so segments without positions can re-tokenize documents the same way.
+ * An operator or parenthesis with nothing to apply to, such as "a OR", "()", a trailing NOT or an
+ * unbalanced parenthesis, is rejected with an IllegalArgumentException rather than read as matching nothing.
+ */
+public class BooleanQuery {
+
+    public enum Type { TERM, AND, OR, NOT, PHRASE }
+
+    private final Type type;
+    private final String term;
+    private final List<BooleanQuery> children;
+    private final int slop;
+    private final boolean stem;
+
+    private BooleanQuery(Type type, String term, List<BooleanQuery> children) {
+        this(type, term, children, 0, false);
+    }
+
+    private BooleanQuery(Type type, String term, List<BooleanQuery> children, int slop, boolean stem) {
+        this.type = type;
+        this.term = term;
+        this.children = children;
+        this.slop = slop;
+        this.stem = stem;
+    }
+
+    public static BooleanQuery term(String term) {
+        return new BooleanQuery(Type.TERM, term, Collections.emptyList());
+    }
+
+    public static BooleanQuery and(List<BooleanQuery> children) {
+        return new BooleanQuery(Type.AND, null, children);
+    }
+
+    public static BooleanQuery or(List<BooleanQuery> children) {
+        return new BooleanQuery(Type.OR, null, children);
+    }
+
+    public static BooleanQuery not(BooleanQuery child) {
+        return new BooleanQuery(Type.NOT, null, Collections.singletonList(child));
+    }
+
+    public static BooleanQuery phrase(List<String> terms, int slop, boolean stem) {
+        List<BooleanQuery> children = new ArrayList<>();
+        for (String term : terms) {
+            children.add(term(term));
+        }
+        return new BooleanQuery(Type.PHRASE, null, children, slop, stem);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public List<BooleanQuery> getChildren() {
+        return children;
+    }
+
+    public int getSlop() {
+        return slop;
+    }
+
+    public boolean isStemmed() {
+        return stem;
+    }
+
+    public List<String> getPhraseTerms() {
+        List<String> terms = new ArrayList<>();
+        for (BooleanQuery child : children) {
+            terms.add(child.getTerm());
+        }
+        return terms;
+    }
+
+    public static BooleanQuery parse(String text, boolean stem) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+                int close = text.indexOf('"', i + 1);
+                if (close < 0) {
+                    close = text.length();
+                }
+                int end = close;
+                if (close + 1 < text.length() && text.charAt(close + 1) == '~') {
+                    end = close + 1;
+                    while (end + 1 < text.length() && Character.isDigit(text.charAt(end + 1))) {
+                        end++;
+                    }
+                }
+                // the phrase stays one word, quoted, so operators inside it are only words
+                String slop = end > close + 1 ? text.substring(close + 2, end + 1) : "";
+                words.add('"' + text.substring(i + 1, Math.min(close, text.length())) + '"' + slop);
+                i = end;
+                continue;
+            }
+            if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+                if (!Character.isWhitespace(c)) {
+                    words.add(String.valueOf(c));
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+
+        Parser parser = new Parser(text, words, stem);
+        BooleanQuery query = parser.parseOr();
+        if (parser.position < words.size()) {
+            throw parser.error("unmatched )");
+        }
+        return query;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+        case TERM:
+            return term;
+        case NOT:
+            return "NOT " + children.get(0);
+        case PHRASE:
+            return '"' + String.join(" ", getPhraseTerms()) + '"' + (slop > 0 ? "~" + slop : "");
+        default:
+            StringBuilder text = new StringBuilder("(");
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    text.append(type == Type.AND ? " AND " : " OR ");
+                }
+                text.append(children.get(i));
+            }
+            return text.append(")").toString();
+        }
+    }
+
+    private static class Parser {
+        private final String text;
+        private final List<String> words;
+        private final boolean stem;
+        private int position = 0;
+
+        Parser(String text, List<String> words, boolean stem) {
+            this.text = text;
+            this.words = words;
+            this.stem = stem;
+        }
+
+        private String peek() {
+            return position < words.size() ? words.get(position) : null;
+        }
+
+        private IllegalArgumentException error(String problem) {
+            return new IllegalArgumentException("malformed query \"" + text + "\": " + problem);
+        }
+
+        BooleanQuery parseOr() {
+            List<BooleanQuery> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while ("OR".equals(peek())) {
+                position++;
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : or(operands);
+        }
+
+        // a word that analyzes to no tokens, like a lone "-", is skipped rather than rejected
+        BooleanQuery parseAnd() {
+            List<BooleanQuery> operands = new ArrayList<>();
+            boolean empty = true;
+            while (peek() != null && !"OR".equals(peek()) && !")".equals(peek())) {
+                if ("AND".equals(peek())) {
+                    position++;
+                    String next = peek();
+                    if (empty || next == null || next.equals(")") || next.equals("OR") || next.equals("AND")) {
+                        throw error("AND without two operands");
+                    }
+                    continue;
+                }
+                empty = false;
+                BooleanQuery operand = parseNot();
+                if (operand != null) {
+                    operands.add(operand);
+                }
+            }
+            if (empty) {
+                throw error(position == 0 ? "no operand" : "no operand after " + words.get(position - 1));
+            }
+            return operands.size() == 1 ? operands.get(0) : and(operands);
+        }
+
+        BooleanQuery parseNot() {
+            String word = words.get(position++);
+            if ("NOT".equals(word)) {
+                String next = peek();
+                if (next == null || next.equals(")") || next.equals("OR") || next.equals("AND")) {
+                    throw error("NOT without an operand");
+                }
+                BooleanQuery operand = parseNot();
+                return operand == null ? null : not(operand);
+            }
+            if ("(".equals(word)) {
+                BooleanQuery operand = parseOr();
+                if (!")".equals(peek())) {
+                    throw error("missing )");
+                }
+                position++;
+                return operand;
+            }
+            if (word.startsWith("\"")) {
+                int close = word.lastIndexOf('"');
+                List<String> tokens = BM25.tokenize(word.substring(1, close), stem);
+                int slop = 0;
+                if (close + 1 < word.length()) {
+                    try {
+                        slop = Integer.parseInt(word.substring(close + 1));
+                    } catch (NumberFormatException e) {
+                        throw error("slop " + word.substring(close + 1) + " is too large");
+                    }
+                }
+                if (tokens.isEmpty()) {
+                    return null;
+                }
+                return tokens.size() == 1 ? term(tokens.get(0)) : phrase(tokens, slop, stem);
+            }
+            List<String> tokens = BM25.tokenize(word, stem);
+            if (tokens.isEmpty()) {
+                return null;
+            }
+            if (tokens.size() == 1) {
+                return term(tokens.get(0));
+            }
+            List<BooleanQuery> operands = new ArrayList<>();
+            for (String token : tokens) {
+                operands.add(term(token));
+            }
+            return and(operands);
+        }
+    }
+}
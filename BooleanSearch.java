@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Evaluates BooleanQuery trees over every segment by streaming DocIdIterators, so no intermediate result
+ * list is built. plan() rewrites a query with the collection-wide document frequencies before it runs:
+ * nested ANDs and ORs are flattened, conjunctions are ordered rarest first so the rarest operand proposes
+ * candidates, terms that do not occur are folded away and NOT operands become filters on the conjunction
+ * they belong to. Per segment, terms with a bitmap in postings-bitmaps.bin are combined a word at a time
+ * before any iteration, and an OR of terms whose postings are short in total is merged into one sorted
+ * docid array instead of being unioned at every step. A phrase is planned like the conjunction of its
+ * terms and streamed by a PhraseIterator over the segment's positions.
+ */
+public class BooleanSearch {
+
+    private static final int MERGE_LIMIT = 4 * PostingsCodec.BLOCK_SIZE;
+
+    private final SegmentedIndex index;
+    private final BlockMaxPostings[] segments;
+    private final List<Map<Integer, DocIdBitmap>> bitmaps = new ArrayList<>();
+    private final PositionsReader[] positions;
+    private final DocumentStore[] documents;
+
+    public BooleanSearch(SegmentedIndex index, DocLengths docLengths) throws IOException {
+        this.index = index;
+        this.segments = new BlockMaxPostings[index.getSegmentCount()];
+        this.positions = new PositionsReader[segments.length];
+        this.documents = new DocumentStore[segments.length];
+        for (int segment = 0; segment < segments.length; segment++) {
+            String segmentDir = index.getSegmentDir(segment);
+            segments[segment] = new BlockMaxPostings(segmentDir, docLengths, index.getDocBase(segment));
+            bitmaps.add(PostingsCodec.loadBitmaps(segmentDir));
+            if (PositionsReader.exists(segmentDir)) {
+                positions[segment] = new PositionsReader(segmentDir);
+            } else {
+                documents[segment] = new DocumentStore(segmentDir);
+            }
+        }
+    }
+
+    public long getDf(String term) {
+        long df = 0;
+        for (int segment = 0; segment < segments.length; segment++) {
+            TermDictionary.Entry entry = index.getDictionary(segment).lookup(term);
+            if (entry != null) {
+                df += entry.getDf();
+            }
+        }
+        return df;
+    }
+
+    public long estimate(BooleanQuery query) {
+        switch (query.getType()) {
+        case TERM:
+            return getDf(query.getTerm());
+        case NOT:
+            return index.getDocumentCount() - estimate(query.getChildren().get(0));
+        case OR:
+            long sum = 0;
+            for (BooleanQuery child : query.getChildren()) {
+                sum += estimate(child);
+            }
+            return Math.min(sum, index.getDocumentCount());
+        default:
+            // a phrase is bounded by its rarest term like a conjunction
+            long min = query.getChildren().isEmpty() ? 0 : index.getDocumentCount();
+            for (BooleanQuery child : query.getChildren()) {
+                min = Math.min(min, estimate(child));
+            }
+            return min;
+        }
+    }
+
+    public BooleanQuery plan(BooleanQuery query) {
+        switch (query.getType()) {
+        case TERM:
+        case PHRASE:
+            return query;
+        case NOT:
+            return BooleanQuery.not(plan(query.getChildren().get(0)));
+        case OR:
+            List<BooleanQuery> operands = new ArrayList<>();
+            for (BooleanQuery child : query.getChildren()) {
+                BooleanQuery planned = plan(child);
+                if (planned.getType() == BooleanQuery.Type.OR) {
+                    operands.addAll(planned.getChildren());
+                } else if (estimate(planned) > 0) {
+                    operands.add(planned);
+                }
+            }
+            return operands.size() == 1 ? operands.get(0) : BooleanQuery.or(operands);
+        default:
+            List<BooleanQuery> positives = new ArrayList<>();
+            List<BooleanQuery> negatives = new ArrayList<>();
+            for (BooleanQuery child : query.getChildren()) {
+                BooleanQuery planned = plan(child);
+                if (planned.getType() == BooleanQuery.Type.AND) {
+                    for (BooleanQuery operand : planned.getChildren()) {
+                        (operand.getType() == BooleanQuery.Type.NOT ? negatives : positives).add(operand);
+                    }
+                    if (planned.getChildren().isEmpty()) {
+                        return planned;
+                    }
+                } else if (planned.getType() == BooleanQuery.Type.NOT) {
+                    negatives.add(planned);
+                } else {
+                    positives.add(planned);
+                }
+            }
+            for (BooleanQuery positive : positives) {
+                if (estimate(positive) == 0) {
+                    return BooleanQuery.and(new ArrayList<>());
+                }
+            }
+            if (positives.size() == 1 && negatives.isEmpty()) {
+                return positives.get(0);
+            }
+            positives.sort(Comparator.comparingLong(this::estimate));
+            negatives.sort(Comparator.comparingLong(this::estimate));
+            positives.addAll(negatives);
+            return BooleanQuery.and(positives);
+        }
+    }
+
+    public List<Integer> search(BooleanQuery query, boolean planned) {
+        List<Integer> resultSet = new ArrayList<>();
+        for (int segment = 0; segment < segments.length; segment++) {
+            int docBase = index.getDocBase(segment);
+            DocIdIterator matches = open(segment, query, planned);
+            for (int docId = matches.docId(); docId != DocIdIterator.END; matches.next(), docId = matches.docId()) {
+                resultSet.add(docBase + docId);
+            }
+        }
+        return resultSet;
+    }
+
+    private DocIdIterator open(int segment, BooleanQuery query, boolean planned) {
+        switch (query.getType()) {
+        case TERM:
+            int termId = index.getDictionary(segment).getTermId(query.getTerm());
+            if (termId < 0) {
+                return new ArrayIterator(new int[0], 0);
+            }
+            DocIdBitmap bitmap = planned ? bitmaps.get(segment).get(termId) : null;
+            return bitmap != null ? bitmap.iterator() : segments[segment].open(termId);
+        case OR:
+            return planned ? openPlannedOr(segment, query) : openOr(segment, query.getChildren(), planned);
+        case NOT:
+            return openAnd(segment, List.of(query), planned);
+        case PHRASE:
+            return openPhrase(segment, query);
+        default:
+            return openAnd(segment, query.getChildren(), planned);
+        }
+    }
+
+    private DocIdIterator openPhrase(int segment, BooleanQuery phrase) {
+        List<String> terms = phrase.getPhraseTerms();
+        int[] termIds = new int[terms.size()];
+        for (int k = 0; k < termIds.length; k++) {
+            termIds[k] = index.getDictionary(segment).getTermId(terms.get(k));
+            if (termIds[k] < 0) {
+                return new ArrayIterator(new int[0], 0);
+            }
+        }
+        return new PhraseIterator(segments[segment], positions[segment], documents[segment], termIds, terms,
+                phrase.getSlop(), Analyzer.get(phrase.isStemmed()));
+    }
+
+    private DocIdIterator openOr(int segment, List<BooleanQuery> operands, boolean planned) {
+        DocIdIterator[] iterators = new DocIdIterator[operands.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            iterators[i] = open(segment, operands.get(i), planned);
+        }
+        return new OrIterator(iterators);
+    }
+
+    private DocIdIterator openPlannedOr(int segment, BooleanQuery query) {
+        DocIdBitmap union = null;
+        List<BooleanQuery> rest = new ArrayList<>();
+        List<Integer> shortTermIds = new ArrayList<>();
+        long shortPostings = 0;
+        for (BooleanQuery operand : query.getChildren()) {
+            if (operand.getType() != BooleanQuery.Type.TERM) {
+                rest.add(operand);
+                continue;
+            }
+            int termId = index.getDictionary(segment).getTermId(operand.getTerm());
+            if (termId < 0) {
+                continue;
+            }
+            DocIdBitmap bitmap = bitmaps.get(segment).get(termId);
+            if (bitmap != null) {
+                union = union == null ? bitmap : union.or(bitmap);
+            } else if (segments[segment].getDf(termId) <= MERGE_LIMIT) {
+                shortTermIds.add(termId);
+                shortPostings += segments[segment].getDf(termId);
+            } else {
+                rest.add(operand);
+            }
+        }
+
+        List<DocIdIterator> iterators = new ArrayList<>();
+        if (union != null) {
+            iterators.add(union.iterator());
+        }
+        if (shortTermIds.size() == 1) {
+            iterators.add(segments[segment].open(shortTermIds.get(0)));
+        } else if (!shortTermIds.isEmpty()) {
+            DocIdIterator[] lists = new DocIdIterator[shortTermIds.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = segments[segment].open(shortTermIds.get(i));
+            }
+            OrIterator merge = new OrIterator(lists);
+            int[] docIds = new int[(int) shortPostings];
+            int length = 0;
+            for (int docId = merge.docId(); docId != DocIdIterator.END; merge.next(), docId = merge.docId()) {
+                docIds[length++] = docId;
+            }
+            iterators.add(new ArrayIterator(docIds, length));
+        }
+        for (BooleanQuery operand : rest) {
+            iterators.add(open(segment, operand, true));
+        }
+        return iterators.size() == 1 ? iterators.get(0) : new OrIterator(iterators.toArray(new DocIdIterator[0]));
+    }
+
+    private DocIdIterator openAnd(int segment, List<BooleanQuery> operands, boolean planned) {
+        List<DocIdIterator> positives = new ArrayList<>();
+        List<DocIdIterator> negatives = new ArrayList<>();
+        DocIdBitmap intersection = null;
+        DocIdBitmap exclusion = null;
+        for (BooleanQuery operand : operands) {
+            boolean negated = operand.getType() == BooleanQuery.Type.NOT;
+            BooleanQuery positive = negated ? operand.getChildren().get(0) : operand;
+            DocIdBitmap bitmap = null;
+            if (planned && positive.getType() == BooleanQuery.Type.TERM) {
+                int termId = index.getDictionary(segment).getTermId(positive.getTerm());
+                bitmap = termId < 0 ? null : bitmaps.get(segment).get(termId);
+            }
+            if (bitmap != null && !negated) {
+                intersection = intersection == null ? bitmap : intersection.and(bitmap);
+            } else if (bitmap != null) {
+                exclusion = exclusion == null ? bitmap : exclusion.or(bitmap);
+            } else {
+                (negated ? negatives : positives).add(open(segment, positive, planned));
+            }
+        }
+        if (intersection != null && exclusion != null) {
+            intersection = intersection.andNot(exclusion);
+            exclusion = null;
+        }
+        if (intersection != null) {
+            positives.add(intersection.iterator());
+        }
+        if (exclusion != null) {
+            negatives.add(exclusion.iterator());
+        }
+        if (positives.isEmpty()) {
+            if (operands.isEmpty()) {
+                return new ArrayIterator(new int[0], 0);
+            }
+            int documentCount = (segment + 1 < segments.length ? index.getDocBase(segment + 1)
+                    : index.getDocumentCount()) - index.getDocBase(segment);
+            positives.add(new RangeIterator(documentCount));
+        }
+        return new AndIterator(positives.toArray(new DocIdIterator[0]), negatives.toArray(new DocIdIterator[0]));
+    }
+
+    private static class AndIterator implements DocIdIterator {
+        private final DocIdIterator lead;
+        private final DocIdIterator[] others;
+        private final DocIdIterator[] negatives;
+
+        AndIterator(DocIdIterator[] positives, DocIdIterator[] negatives) {
+            this.lead = positives[0];
+            this.others = new DocIdIterator[positives.length - 1];
+            System.arraycopy(positives, 1, others, 0, others.length);
+            this.negatives = negatives;
+            findMatch();
+        }
+
+        @Override
+        public int docId() {
+            return lead.docId();
+        }
+
+        @Override
+        public void next() {
+            lead.next();
+            findMatch();
+        }
+
+        @Override
+        public void advance(int target) {
+            lead.advance(target);
+            findMatch();
+        }
+
+        private void findMatch() {
+            int candidate = lead.docId();
+            while (candidate != END) {
+                int next = candidate;
+                for (DocIdIterator other : others) {
+                    other.advance(candidate);
+                    if (other.docId() != candidate) {
+                        next = other.docId();
+                        break;
+                    }
+                }
+                if (next == candidate) {
+                    for (DocIdIterator negative : negatives) {
+                        negative.advance(candidate);
+                        if (negative.docId() == candidate) {
+                            next = candidate + 1;
+                            break;
+                        }
+                    }
+                    if (next == candidate) {
+                        return;
+                    }
+                }
+                if (next == END) {
+                    lead.advance(END);
+                    return;
+                }
+                lead.advance(next);
+                candidate = lead.docId();
+            }
+        }
+    }
+
+    private static class OrIterator implements DocIdIterator {
+        private final DocIdIterator[] operands;
+        private int docId;
+
+        OrIterator(DocIdIterator[] operands) {
+            this.operands = operands;
+            update();
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public void next() {
+            int current = docId;
+            for (DocIdIterator operand : operands) {
+                if (operand.docId() == current) {
+                    operand.next();
+                }
+            }
+            update();
+        }
+
+        @Override
+        public void advance(int target) {
+            if (docId >= target) {
+                return;
+            }
+            for (DocIdIterator operand : operands) {
+                operand.advance(target);
+            }
+            update();
+        }
+
+        private void update() {
+            docId = END;
+            for (DocIdIterator operand : operands) {
+                docId = Math.min(docId, operand.docId());
+            }
+        }
+    }
+
+    private static class ArrayIterator implements DocIdIterator {
+        private final int[] docIds;
+        private final int length;
+        private int index = 0;
+
+        ArrayIterator(int[] docIds, int length) {
+            this.docIds = docIds;
+            this.length = length;
+        }
+
+        @Override
+        public int docId() {
+            return index < length ? docIds[index] : END;
+        }
+
+        @Override
+        public void next() {
+            if (index < length) {
+                index++;
+            }
+        }
+
+        @Override
+        public void advance(int target) {
+            if (index >= length || docIds[index] >= target) {
+                return;
+            }
+            int low = index;
+            int high = index + 1;
+            int step = 1;
+            while (high < length && docIds[high] < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            int found = Arrays.binarySearch(docIds, low + 1, Math.min(high, length), target);
+            index = found >= 0 ? found : -found - 1;
+        }
+    }
+
+    private static class RangeIterator implements DocIdIterator {
+        private final int end;
+        private int docId = 0;
+
+        RangeIterator(int end) {
+            this.end = end;
+            if (end == 0) {
+                docId = END;
+            }
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public void next() {
+            advance(docId + 1);
+        }
+
+        @Override
+        public void advance(int target) {
+            if (docId < target) {
+                docId = target < end ? target : END;
+            }
+        }
+    }
+}
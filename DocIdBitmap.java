@@ -0,0 +1,437 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * A compressed docid set in the style of Roaring bitmaps. Docids are split on their high 16 bits into
+ * containers of up to 65536 values; a container holding more than ARRAY_LIMIT docids is a 1024-word
+ * bitmap, a sparser one is a sorted char array of the low 16 bits. AND, OR and AND NOT between two bitmap
+ * containers are word-at-a-time, and results are converted back to arrays when they become sparse.
+ * On disk: int container count, then per container char key, int cardinality and either the cardinality
+ * chars or 1024 longs.
+ */
+public class DocIdBitmap {
+
+    static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+
+    private final char[] keys;
+    private final int[] cardinalities;
+    private final char[][] arrays;
+    private final long[][] bitmaps;
+    private final int size;
+
+    private DocIdBitmap(char[] keys, int[] cardinalities, char[][] arrays, long[][] bitmaps, int size) {
+        this.keys = keys;
+        this.cardinalities = cardinalities;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.size = size;
+    }
+
+    public static DocIdBitmap fromSortedDocIds(int[] docIds, int length) {
+        Builder builder = new Builder(length / 65536 + 2);
+        int start = 0;
+        while (start < length) {
+            char key = (char) (docIds[start] >>> 16);
+            int end = start;
+            while (end < length && docIds[end] >>> 16 == key) {
+                end++;
+            }
+            int cardinality = end - start;
+            if (cardinality > ARRAY_LIMIT) {
+                long[] words = new long[WORDS];
+                for (int i = start; i < end; i++) {
+                    words[(docIds[i] & 0xFFFF) >>> 6] |= 1L << docIds[i];
+                }
+                builder.add(key, cardinality, null, words);
+            } else {
+                char[] values = new char[cardinality];
+                for (int i = start; i < end; i++) {
+                    values[i - start] = (char) docIds[i];
+                }
+                builder.add(key, cardinality, values, null);
+            }
+            start = end;
+        }
+        return builder.build();
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    public boolean contains(int docId) {
+        int container = Arrays.binarySearch(keys, 0, size, (char) (docId >>> 16));
+        if (container < 0) {
+            return false;
+        }
+        if (bitmaps[container] != null) {
+            return (bitmaps[container][(docId & 0xFFFF) >>> 6] & (1L << docId)) != 0;
+        }
+        return Arrays.binarySearch(arrays[container], 0, cardinalities[container], (char) docId) >= 0;
+    }
+
+    public int[] toArray() {
+        int[] docIds = new int[cardinality()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            if (bitmaps[i] != null) {
+                long[] words = bitmaps[i];
+                for (int word = 0; word < WORDS; word++) {
+                    long bits = words[word];
+                    while (bits != 0) {
+                        docIds[count++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                    }
+                }
+            } else {
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    docIds[count++] = high | arrays[i][j];
+                }
+            }
+        }
+        return docIds;
+    }
+
+    public DocIdIterator iterator() {
+        return new Iterator();
+    }
+
+    public DocIdBitmap and(DocIdBitmap other) {
+        Builder builder = new Builder(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                if (bitmaps[i] != null && other.bitmaps[j] != null) {
+                    long[] words = new long[WORDS];
+                    int cardinality = 0;
+                    for (int word = 0; word < WORDS; word++) {
+                        words[word] = bitmaps[i][word] & other.bitmaps[j][word];
+                        cardinality += Long.bitCount(words[word]);
+                    }
+                    builder.addWords(keys[i], cardinality, words);
+                } else if (bitmaps[i] != null || other.bitmaps[j] != null) {
+                    char[] values = bitmaps[i] != null ? other.arrays[j] : arrays[i];
+                    int length = bitmaps[i] != null ? other.cardinalities[j] : cardinalities[i];
+                    long[] words = bitmaps[i] != null ? bitmaps[i] : other.bitmaps[j];
+                    char[] result = new char[length];
+                    int cardinality = 0;
+                    for (int k = 0; k < length; k++) {
+                        if ((words[values[k] >>> 6] & (1L << values[k])) != 0) {
+                            result[cardinality++] = values[k];
+                        }
+                    }
+                    builder.add(keys[i], cardinality, result, null);
+                } else {
+                    char[] result = new char[Math.min(cardinalities[i], other.cardinalities[j])];
+                    int cardinality = 0;
+                    int a = 0;
+                    int b = 0;
+                    while (a < cardinalities[i] && b < other.cardinalities[j]) {
+                        if (arrays[i][a] < other.arrays[j][b]) {
+                            a++;
+                        } else if (arrays[i][a] > other.arrays[j][b]) {
+                            b++;
+                        } else {
+                            result[cardinality++] = arrays[i][a];
+                            a++;
+                            b++;
+                        }
+                    }
+                    builder.add(keys[i], cardinality, result, null);
+                }
+                i++;
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    public DocIdBitmap or(DocIdBitmap other) {
+        Builder builder = new Builder(size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                builder.add(keys[i], cardinalities[i], arrays[i], bitmaps[i]);
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                builder.add(other.keys[j], other.cardinalities[j], other.arrays[j], other.bitmaps[j]);
+                j++;
+            } else {
+                long[] words = toWords(i);
+                other.orInto(j, words);
+                int cardinality = 0;
+                for (int word = 0; word < WORDS; word++) {
+                    cardinality += Long.bitCount(words[word]);
+                }
+                builder.addWords(keys[i], cardinality, words);
+                i++;
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    public DocIdBitmap andNot(DocIdBitmap other) {
+        Builder builder = new Builder(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j == other.size || other.keys[j] != keys[i]) {
+                builder.add(keys[i], cardinalities[i], arrays[i], bitmaps[i]);
+                continue;
+            }
+            if (bitmaps[i] != null) {
+                long[] words = bitmaps[i].clone();
+                int cardinality = 0;
+                if (other.bitmaps[j] != null) {
+                    for (int word = 0; word < WORDS; word++) {
+                        words[word] &= ~other.bitmaps[j][word];
+                        cardinality += Long.bitCount(words[word]);
+                    }
+                } else {
+                    cardinality = cardinalities[i];
+                    for (int k = 0; k < other.cardinalities[j]; k++) {
+                        char value = other.arrays[j][k];
+                        if ((words[value >>> 6] & (1L << value)) != 0) {
+                            words[value >>> 6] &= ~(1L << value);
+                            cardinality--;
+                        }
+                    }
+                }
+                builder.addWords(keys[i], cardinality, words);
+            } else {
+                char[] result = new char[cardinalities[i]];
+                int cardinality = 0;
+                for (int k = 0; k < cardinalities[i]; k++) {
+                    int docId = keys[i] << 16 | arrays[i][k];
+                    if (!other.containsIn(j, docId)) {
+                        result[cardinality++] = arrays[i][k];
+                    }
+                }
+                builder.add(keys[i], cardinality, result, null);
+            }
+        }
+        return builder.build();
+    }
+
+    private boolean containsIn(int container, int docId) {
+        if (bitmaps[container] != null) {
+            return (bitmaps[container][(docId & 0xFFFF) >>> 6] & (1L << docId)) != 0;
+        }
+        return Arrays.binarySearch(arrays[container], 0, cardinalities[container], (char) docId) >= 0;
+    }
+
+    private long[] toWords(int container) {
+        if (bitmaps[container] != null) {
+            return bitmaps[container].clone();
+        }
+        long[] words = new long[WORDS];
+        orInto(container, words);
+        return words;
+    }
+
+    private void orInto(int container, long[] words) {
+        if (bitmaps[container] != null) {
+            for (int word = 0; word < WORDS; word++) {
+                words[word] |= bitmaps[container][word];
+            }
+        } else {
+            for (int k = 0; k < cardinalities[container]; k++) {
+                char value = arrays[container][k];
+                words[value >>> 6] |= 1L << value;
+            }
+        }
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            out.writeInt(cardinalities[i]);
+            if (bitmaps[i] != null) {
+                for (long word : bitmaps[i]) {
+                    out.writeLong(word);
+                }
+            } else {
+                for (int k = 0; k < cardinalities[i]; k++) {
+                    out.writeChar(arrays[i][k]);
+                }
+            }
+        }
+    }
+
+    public static DocIdBitmap read(DataInputStream in) throws IOException {
+        int containers = in.readInt();
+        Builder builder = new Builder(containers);
+        for (int i = 0; i < containers; i++) {
+            char key = in.readChar();
+            int cardinality = in.readInt();
+            if (cardinality > ARRAY_LIMIT) {
+                long[] words = new long[WORDS];
+                for (int word = 0; word < WORDS; word++) {
+                    words[word] = in.readLong();
+                }
+                builder.add(key, cardinality, null, words);
+            } else {
+                char[] values = new char[cardinality];
+                for (int k = 0; k < cardinality; k++) {
+                    values[k] = in.readChar();
+                }
+                builder.add(key, cardinality, values, null);
+            }
+        }
+        return builder.build();
+    }
+
+    private class Iterator implements DocIdIterator {
+        private int container = 0;
+        private int index = -1;
+        private int docId = -1;
+
+        Iterator() {
+            next();
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public void next() {
+            if (docId == END) {
+                return;
+            }
+            index++;
+            seek();
+        }
+
+        @Override
+        public void advance(int target) {
+            if (docId >= target) {
+                return;
+            }
+            char key = (char) (target >>> 16);
+            if (keys[container] != key) {
+                int found = Arrays.binarySearch(keys, container, size, key);
+                container = found >= 0 ? found : -found - 1;
+                index = 0;
+                if (found < 0) {
+                    seek();
+                    return;
+                }
+            }
+            int low = target & 0xFFFF;
+            if (bitmaps[container] != null) {
+                index = low;
+            } else {
+                int found = Arrays.binarySearch(arrays[container], 0, cardinalities[container], (char) low);
+                index = found >= 0 ? found : -found - 1;
+            }
+            seek();
+        }
+
+        private void seek() {
+            while (container < size) {
+                if (bitmaps[container] != null) {
+                    long[] words = bitmaps[container];
+                    int word = index >>> 6;
+                    if (word < WORDS) {
+                        long bits = words[word] & (-1L << index);
+                        while (bits == 0 && ++word < WORDS) {
+                            bits = words[word];
+                        }
+                        if (bits != 0) {
+                            index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                            docId = keys[container] << 16 | index;
+                            return;
+                        }
+                    }
+                } else if (index < cardinalities[container]) {
+                    docId = keys[container] << 16 | arrays[container][index];
+                    return;
+                }
+                container++;
+                index = 0;
+            }
+            docId = END;
+        }
+    }
+
+    private static class Builder {
+        private char[] keys;
+        private int[] cardinalities;
+        private char[][] arrays;
+        private long[][] bitmaps;
+        private int size = 0;
+
+        Builder(int capacity) {
+            capacity = Math.max(1, capacity);
+            keys = new char[capacity];
+            cardinalities = new int[capacity];
+            arrays = new char[capacity][];
+            bitmaps = new long[capacity][];
+        }
+
+        void addWords(char key, int cardinality, long[] words) {
+            if (cardinality > ARRAY_LIMIT) {
+                add(key, cardinality, null, words);
+                return;
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int word = 0; word < WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            add(key, cardinality, values, null);
+        }
+
+        void add(char key, int cardinality, char[] values, long[] words) {
+            if (cardinality == 0) {
+                return;
+            }
+            if (values != null && cardinality > ARRAY_LIMIT) {
+                words = new long[WORDS];
+                for (int k = 0; k < cardinality; k++) {
+                    words[values[k] >>> 6] |= 1L << values[k];
+                }
+                values = null;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                cardinalities = Arrays.copyOf(cardinalities, size * 2);
+                arrays = Arrays.copyOf(arrays, size * 2);
+                bitmaps = Arrays.copyOf(bitmaps, size * 2);
+            }
+            keys[size] = key;
+            cardinalities[size] = cardinality;
+            arrays[size] = values;
+            bitmaps[size] = words;
+            size++;
+        }
+
+        DocIdBitmap build() {
+            return new DocIdBitmap(keys, cardinalities, arrays, bitmaps, size);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+/*
+ * A forward-only stream of increasing docids. docId() is END once the stream is exhausted, and
+ * advance(target) moves to the first docid at or after target.
+ */
+public interface DocIdIterator {
+
+    int END = Integer.MAX_VALUE;
+
+    int docId();
+
+    void next();
+
+    void advance(int target);
+}
@@ -0,0 +1,78 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/*
+ * doc-lengths.bin holds the length of every document of a segment as an int, in docid order. The files are
+ * mapped rather than read onto the heap, and get takes a global docid across the segments of an index.
+ * Segments written before the file existed keep their lengths in doc-lengths.ser, which is read instead.
+ */
+public class DocLengths {
+
+    static final String DOC_LENGTHS_FILE = "doc-lengths.bin";
+    private static final String SERIALIZED_FILE = "doc-lengths.ser";
+
+    private final IntBuffer[] segments;
+    private final int[] docBases;
+
+    public DocLengths(String[] segmentDirs) throws IOException {
+        segments = new IntBuffer[segmentDirs.length];
+        docBases = new int[segmentDirs.length + 1];
+        for (int segment = 0; segment < segmentDirs.length; segment++) {
+            segments[segment] = open(segmentDirs[segment]);
+            docBases[segment + 1] = docBases[segment] + segments[segment].limit();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static IntBuffer open(String segmentDir) throws IOException {
+        Path path = Paths.get(segmentDir, DOC_LENGTHS_FILE);
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+            }
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(segmentDir + "/" + SERIALIZED_FILE)))) {
+            List<Integer> docLengths = (List<Integer>) ois.readObject();
+            int[] lengths = new int[docLengths.size()];
+            for (int docId = 0; docId < lengths.length; docId++) {
+                lengths[docId] = docLengths.get(docId);
+            }
+            return IntBuffer.wrap(lengths);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static void write(List<Integer> docLengths, String segmentDir) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(segmentDir + "/" + DOC_LENGTHS_FILE)))) {
+            for (int length : docLengths) {
+                out.writeInt(length);
+            }
+        }
+    }
+
+    public int size() {
+        return docBases[segments.length];
+    }
+
+    public int get(int docId) {
+        int segment = segments.length - 1;
+        while (docId < docBases[segment]) {
+            segment--;
+        }
+        return segments[segment].get(docId - docBases[segment]);
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/*
+ * metadata.bin stores the per-document metadata as columns: an int document count, the docid -> DOCNO
+ * offsets into the DOCNO string table (count + 1 ints), the dates as yyyymmdd ints, the byte offset and
+ * length of each headline inside its document store record, and finally the UTF-8 DOCNO string table.
+ */
+public class DocumentMetaData {
+
+    static final String METADATA_FILE = "metadata.bin";
+
+    private final int documentCount;
+    private final int[] docNoOffsets;
+    private final int[] dates;
+    private final int[] headlineOffsets;
+    private final int[] headlineLengths;
+    private final byte[] docNos;
+    private final int[] docNoTable;
+
+    public DocumentMetaData(String indexDir) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(indexDir, METADATA_FILE))) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated " + METADATA_FILE);
+                }
+            }
+        }
+        buffer.flip();
+
+        documentCount = buffer.getInt();
+        IntBuffer ints = buffer.asIntBuffer();
+        docNoOffsets = new int[documentCount + 1];
+        dates = new int[documentCount];
+        headlineOffsets = new int[documentCount];
+        headlineLengths = new int[documentCount];
+        ints.get(docNoOffsets).get(dates).get(headlineOffsets).get(headlineLengths);
+        buffer.position(buffer.position() + 4 * ints.position());
+        docNos = new byte[buffer.remaining()];
+        buffer.get(docNos);
+
+        docNoTable = new int[Integer.highestOneBit(Math.max(1, documentCount)) * 4];
+        Arrays.fill(docNoTable, -1);
+        for (int docId = 0; docId < documentCount; docId++) {
+            int slot = hash(docNos, docNoOffsets[docId], docNoOffsets[docId + 1]) & (docNoTable.length - 1);
+            while (docNoTable[slot] >= 0) {
+                slot = (slot + 1) & (docNoTable.length - 1);
+            }
+            docNoTable[slot] = docId;
+        }
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public String getDocNo(int docId) {
+        if (docId < 0 || docId >= documentCount) {
+            return null;
+        }
+        return new String(docNos, docNoOffsets[docId], docNoOffsets[docId + 1] - docNoOffsets[docId],
+                StandardCharsets.UTF_8);
+    }
+
+    public int getDocId(String docNo) {
+        byte[] key = docNo.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(key, 0, key.length) & (docNoTable.length - 1);
+        while (docNoTable[slot] >= 0) {
+            int docId = docNoTable[slot];
+            if (equals(key, docNoOffsets[docId], docNoOffsets[docId + 1])) {
+                return docId;
+            }
+            slot = (slot + 1) & (docNoTable.length - 1);
+        }
+        return -1;
+    }
+
+    public String getDate(int docId) {
+        int date = dates[docId];
+        if (date < 0) {
+            return null;
+        }
+        return String.format("%02d-%02d-%04d", date / 100 % 100, date % 100, date / 10000);
+    }
+
+    public int getHeadlineOffset(int docId) {
+        return headlineOffsets[docId];
+    }
+
+    public int getHeadlineLength(int docId) {
+        return headlineLengths[docId];
+    }
+
+    static int encodeDate(String date) {
+        if (date == null) {
+            return -1;
+        }
+        String[] splitPartsofDate = date.split("-");
+        try {
+            return Integer.parseInt(splitPartsofDate[2]) * 10000 + Integer.parseInt(splitPartsofDate[0]) * 100
+                    + Integer.parseInt(splitPartsofDate[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private boolean equals(byte[] key, int start, int end) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (docNos[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
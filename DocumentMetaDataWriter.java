@@ -0,0 +1,55 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class DocumentMetaDataWriter {
+
+    private final ByteArrayOutputStream docNos = new ByteArrayOutputStream(1 << 16);
+    private int[] docNoOffsets = new int[1024];
+    private int[] dates = new int[1024];
+    private int[] headlineOffsets = new int[1024];
+    private int[] headlineLengths = new int[1024];
+    private int documentCount = 0;
+
+    public void add(String docNo, String date, int headlineOffset, int headlineLength) {
+        if (documentCount + 1 == docNoOffsets.length) {
+            int capacity = docNoOffsets.length * 2;
+            docNoOffsets = Arrays.copyOf(docNoOffsets, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+            headlineOffsets = Arrays.copyOf(headlineOffsets, capacity);
+            headlineLengths = Arrays.copyOf(headlineLengths, capacity);
+        }
+        if (docNo != null) {
+            docNos.writeBytes(docNo.getBytes(StandardCharsets.UTF_8));
+        }
+        dates[documentCount] = DocumentMetaData.encodeDate(date);
+        headlineOffsets[documentCount] = headlineOffset;
+        headlineLengths[documentCount] = headlineLength;
+        documentCount++;
+        docNoOffsets[documentCount] = docNos.size();
+    }
+
+    public void write(String folderPath) throws IOException {
+        File file = new File(folderPath + "/" + DocumentMetaData.METADATA_FILE);
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(documentCount);
+            writeInts(out, docNoOffsets, documentCount + 1);
+            writeInts(out, dates, documentCount);
+            writeInts(out, headlineOffsets, documentCount);
+            writeInts(out, headlineLengths, documentCount);
+            docNos.writeTo(out);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+}
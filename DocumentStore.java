@@ -0,0 +1,110 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * documents.dat holds the raw documents back to back in docid order, optionally deflated in blocks of
+ * about 64 KB. documents.idx is a compressed flag followed by one (long block offset, int block length,
+ * int record offset, int record length) entry per docid. DOCNO lookups and headline positions come from
+ * the metadata.bin columns.
+ */
+public class DocumentStore implements Closeable {
+
+    static final String DATA_FILE = "documents.dat";
+    static final String INDEX_FILE = "documents.idx";
+    private static final int ENTRY_BYTES = 20;
+
+    private final RandomAccessFile dataFile;
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer index;
+    private final boolean compressed;
+    private final int documentCount;
+    private final DocumentMetaData metaData;
+
+    public DocumentStore(String indexDir) throws IOException {
+        this.dataFile = new RandomAccessFile(indexDir + "/" + DATA_FILE, "r");
+        this.dataChannel = dataFile.getChannel();
+        try (FileChannel indexChannel = FileChannel.open(Paths.get(indexDir, INDEX_FILE))) {
+            this.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        this.compressed = index.get(0) != 0;
+        this.documentCount = (index.capacity() - 1) / ENTRY_BYTES;
+        this.metaData = new DocumentMetaData(indexDir);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public DocumentMetaData getMetaData() {
+        return metaData;
+    }
+
+    public String getDocument(String docNo) throws IOException {
+        int docId = metaData.getDocId(docNo);
+        return docId < 0 ? null : getDocument(docId);
+    }
+
+    public String getDocument(int docId) throws IOException {
+        if (docId < 0 || docId >= documentCount) {
+            return null;
+        }
+        return readRecord(docId, 0, -1);
+    }
+
+    public String getHeadline(int docId) throws IOException {
+        if (docId < 0 || docId >= documentCount || metaData.getHeadlineLength(docId) < 0) {
+            return null;
+        }
+        return readRecord(docId, metaData.getHeadlineOffset(docId), metaData.getHeadlineLength(docId));
+    }
+
+    private String readRecord(int docId, int start, int length) throws IOException {
+        int entry = 1 + docId * ENTRY_BYTES;
+        long blockOffset = index.getLong(entry);
+        int blockLength = index.getInt(entry + 8);
+        int recordOffset = index.getInt(entry + 12);
+        int recordLength = index.getInt(entry + 16);
+        if (length < 0) {
+            length = recordLength - start;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(blockLength);
+        while (block.hasRemaining()) {
+            if (dataChannel.read(block, blockOffset + block.position()) < 0) {
+                throw new IOException("Truncated document store at docid " + docId);
+            }
+        }
+
+        if (!compressed) {
+            return new String(block.array(), start, length, StandardCharsets.UTF_8);
+        }
+
+        byte[] uncompressed = new byte[recordOffset + start + length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block.array());
+            int inflated = 0;
+            while (inflated < uncompressed.length && !inflater.finished()) {
+                inflated += inflater.inflate(uncompressed, inflated, uncompressed.length - inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt document store block at docid " + docId, e);
+        } finally {
+            inflater.end();
+        }
+        return new String(uncompressed, recordOffset + start, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataFile.close();
+    }
+}
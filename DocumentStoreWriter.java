@@ -0,0 +1,110 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+public class DocumentStoreWriter implements Closeable {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final OutputStream dataOut;
+    private final DataOutputStream indexOut;
+    private final boolean compress;
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[BLOCK_SIZE];
+    private int[] blockRecordOffsets = new int[256];
+    private int[] blockRecordLengths = new int[256];
+    private int blockRecords = 0;
+
+    private long offset = 0;
+    private int documentCount = 0;
+
+    public DocumentStoreWriter(String folderPath, boolean compress) throws IOException {
+        new File(folderPath).mkdirs();
+        this.dataOut = new BufferedOutputStream(new FileOutputStream(folderPath + "/" + DocumentStore.DATA_FILE),
+                1 << 16);
+        this.indexOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(folderPath + "/" + DocumentStore.INDEX_FILE)));
+        this.compress = compress;
+        indexOut.writeBoolean(compress);
+    }
+
+    public void append(byte[] record) throws IOException {
+        documentCount++;
+
+        if (!compress) {
+            dataOut.write(record);
+            writeEntry(offset, record.length, 0, record.length);
+            offset += record.length;
+            return;
+        }
+
+        if (blockRecords == blockRecordOffsets.length) {
+            blockRecordOffsets = Arrays.copyOf(blockRecordOffsets, blockRecords * 2);
+            blockRecordLengths = Arrays.copyOf(blockRecordLengths, blockRecords * 2);
+        }
+        blockRecordOffsets[blockRecords] = block.size();
+        blockRecordLengths[blockRecords] = record.length;
+        blockRecords++;
+        block.write(record);
+        if (block.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRecords == 0) {
+            return;
+        }
+        byte[] uncompressed = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        dataOut.write(compressed, 0, compressedLength);
+
+        for (int i = 0; i < blockRecords; i++) {
+            writeEntry(offset, compressedLength, blockRecordOffsets[i], blockRecordLengths[i]);
+        }
+        offset += compressedLength;
+        block.reset();
+        blockRecords = 0;
+    }
+
+    private void writeEntry(long blockOffset, int blockLength, int recordOffset, int recordLength)
+            throws IOException {
+        indexOut.writeLong(blockOffset);
+        indexOut.writeInt(blockLength);
+        indexOut.writeInt(recordOffset);
+        indexOut.writeInt(recordLength);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+        } finally {
+            deflater.end();
+            dataOut.close();
+            indexOut.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * impacts.bin is an impact-ordered copy of the whole index. Every posting's BM25 score, computed with the
+ * collection-wide statistics, is rounded to a non-zero multiple of the level score between -LEVELS and
+ * LEVELS; negative impacts keep the penalty BM25 gives terms found in most documents. Each term holds a
+ * varint count of impact segments, then per segment, positive impacts highest first and then
+ * negative impacts largest penalty first, zigzag varint impact, varint posting count, varint byte length
+ * and the varint docid gaps. A query processes segments in that order across its terms, so stopping early
+ * leaves out the smallest rewards and penalties.
+ * impacts.dict is a term dictionary over every segment's terms whose postings offsets point into
+ * impacts.bin, so a query term is found without global termIds. impacts-header.bin, written last, is the
+ * int document count, the int term count and the double score of one impact level. Adding a segment
+ * changes the document count and the files must be rebuilt; IndexEngine deletes them when it adds a
+ * segment without rebuilding them.
+ * The accumulators are scratch state; copy() gives another thread its own over the same impacts.
+ */
+public class ImpactIndex {
+
+    static final String IMPACTS_FILE = "impacts.bin";
+    static final String DICTIONARY_FILE = "impacts.dict";
+    static final String HEADER_FILE = "impacts-header.bin";
+    // held the per-termId offsets before impacts.dict
+    private static final String OLD_OFFSETS_FILE = "impacts-offsets.bin";
+    private static final int DEADLINE_CHECK_INTERVAL = 4096;
+
+    private final ByteBuffer impacts;
+    private final TermDictionary dictionary;
+    private final double scale;
+    private final int[] accumulators;
+    private final boolean[] seen;
+    private int[] touched = new int[1024];
+    private int[] histogram = new int[1024];
+
+    private final LongAdder postingsProcessed;
+    private final LongAdder truncatedQueries;
+
+    public ImpactIndex(SegmentedIndex index, String indexDir) throws IOException {
+        if (!isCurrent(index, indexDir)) {
+            throw outOfDate(indexDir);
+        }
+        dictionary = new TermDictionary(indexDir, DICTIONARY_FILE);
+        try (DataInputStream headerIn = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(indexDir + "/" + HEADER_FILE)))) {
+            int documentCount = headerIn.readInt();
+            if (headerIn.readInt() != dictionary.getTermCount()) {
+                throw outOfDate(indexDir);
+            }
+            scale = headerIn.readDouble();
+            accumulators = new int[documentCount];
+            seen = new boolean[documentCount];
+        }
+        impacts = PostingsCodec.map(indexDir, IMPACTS_FILE);
+        postingsProcessed = new LongAdder();
+        truncatedQueries = new LongAdder();
+    }
+
+    private ImpactIndex(ImpactIndex shared) {
+        impacts = shared.impacts;
+        dictionary = shared.dictionary;
+        scale = shared.scale;
+        accumulators = new int[shared.accumulators.length];
+        seen = new boolean[shared.accumulators.length];
+        postingsProcessed = shared.postingsProcessed;
+        truncatedQueries = shared.truncatedQueries;
+    }
+
+    public ImpactIndex copy() {
+        return new ImpactIndex(this);
+    }
+
+    private static IOException outOfDate(String indexDir) {
+        return new IOException("impact-ordered postings in " + indexDir
+                + " are out of date; rebuild them with IndexEngine");
+    }
+
+    public static boolean exists(String indexDir) {
+        return new File(indexDir, IMPACTS_FILE).exists();
+    }
+
+    public static boolean isCurrent(SegmentedIndex index, String indexDir) throws IOException {
+        File headerFile = new File(indexDir, HEADER_FILE);
+        if (!exists(indexDir) || !headerFile.exists() || !new File(indexDir, DICTIONARY_FILE).exists()) {
+            return false;
+        }
+        try (DataInputStream headerIn = new DataInputStream(new FileInputStream(headerFile))) {
+            return headerIn.readInt() == index.getDocumentCount();
+        }
+    }
+
+    public static void delete(String indexDir) {
+        new File(indexDir, HEADER_FILE).delete();
+        new File(indexDir, DICTIONARY_FILE).delete();
+        new File(indexDir, IMPACTS_FILE).delete();
+        new File(indexDir, OLD_OFFSETS_FILE).delete();
+    }
+
+    public long getPostingsProcessed() {
+        return postingsProcessed.sum();
+    }
+
+    public int getTruncatedQueries() {
+        return truncatedQueries.intValue();
+    }
+
+    public void search(List<String> terms, long postingsBudget, long deadlineNanos, TopKHeap topDocs) {
+        List<int[]> segments = new ArrayList<>();
+        int[] position = new int[1];
+        for (String term : terms) {
+            TermDictionary.Entry entry = dictionary.lookup(term);
+            if (entry == null) {
+                continue;
+            }
+            position[0] = (int) entry.getPostingsOffset();
+            int segmentCount = PostingsCodec.readVInt(impacts, position);
+            for (int i = 0; i < segmentCount; i++) {
+                int zigzag = PostingsCodec.readVInt(impacts, position);
+                int impact = (zigzag >>> 1) ^ -(zigzag & 1);
+                int count = PostingsCodec.readVInt(impacts, position);
+                int length = PostingsCodec.readVInt(impacts, position);
+                segments.add(new int[] { impact, count, position[0] });
+                position[0] += length;
+            }
+        }
+        segments.sort((a, b) -> a[0] > 0 == b[0] > 0 ? Integer.compare(Math.abs(b[0]), Math.abs(a[0]))
+                : Integer.compare(b[0], a[0]));
+
+        int touchedCount = 0;
+        long processed = 0;
+        boolean truncated = false;
+        for (int[] segment : segments) {
+            int impact = segment[0];
+            int count = segment[1];
+            position[0] = segment[2];
+            int docId = 0;
+            for (int i = 0; i < count; i++) {
+                if (processed == postingsBudget || (processed % DEADLINE_CHECK_INTERVAL == 0 && deadlineNanos > 0
+                        && System.nanoTime() > deadlineNanos)) {
+                    truncated = true;
+                    break;
+                }
+                docId += PostingsCodec.readVInt(impacts, position);
+                if (!seen[docId]) {
+                    seen[docId] = true;
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = docId;
+                }
+                accumulators[docId] += impact;
+                processed++;
+            }
+            if (truncated) {
+                break;
+            }
+        }
+        postingsProcessed.add(processed);
+        if (truncated) {
+            truncatedQueries.increment();
+        }
+
+        int cutoff = kthLargest(touchedCount, topDocs.capacity());
+        int candidateCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int docId = touched[i];
+            if (accumulators[docId] >= cutoff) {
+                touched[candidateCount++] = docId;
+            } else {
+                accumulators[docId] = 0;
+                seen[docId] = false;
+            }
+        }
+        Arrays.sort(touched, 0, candidateCount);
+        topDocs.clear();
+        for (int i = 0; i < candidateCount; i++) {
+            int docId = touched[i];
+            topDocs.offer(docId, accumulators[docId] * scale);
+            accumulators[docId] = 0;
+            seen[docId] = false;
+        }
+        topDocs.sortDescending();
+    }
+
+    private int kthLargest(int touchedCount, int k) {
+        if (touchedCount <= k) {
+            return Integer.MIN_VALUE;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < touchedCount; i++) {
+            min = Math.min(min, accumulators[touched[i]]);
+            max = Math.max(max, accumulators[touched[i]]);
+        }
+        if (histogram.length < max - min + 1) {
+            histogram = new int[max - min + 1];
+        }
+        Arrays.fill(histogram, 0, max - min + 1, 0);
+        for (int i = 0; i < touchedCount; i++) {
+            histogram[accumulators[touched[i]] - min]++;
+        }
+        int count = 0;
+        int value = max;
+        while ((count += histogram[value - min]) < k) {
+            value--;
+        }
+        return value;
+    }
+}
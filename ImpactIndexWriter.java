@@ -0,0 +1,159 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class ImpactIndexWriter {
+
+    static final int LEVELS = 255;
+
+    public static void write(String indexDir) throws IOException {
+        ImpactIndex.delete(indexDir);
+        SegmentedIndex index = new SegmentedIndex(indexDir);
+        DocLengths docLengths = index.openDocLengths();
+        int totalDocs = docLengths.size();
+        double averageDocLength = BM25.calculateAverageDocumentLength(docLengths);
+
+        int segmentCount = index.getSegmentCount();
+        TermDictionary[] dictionaries = new TermDictionary[segmentCount];
+        ByteBuffer[] postings = new ByteBuffer[segmentCount];
+        for (int segment = 0; segment < segmentCount; segment++) {
+            dictionaries[segment] = index.getDictionary(segment);
+            postings[segment] = PostingsCodec.map(index.getSegmentDir(segment), PostingsCodec.POSTINGS_FILE);
+        }
+
+        double[] maxScore = { 0 };
+        int[] termCount = { 0 };
+        forEachTerm(index, dictionaries, postings, docLengths, totalDocs, averageDocLength,
+                (term, df, docIds, scores, length) -> {
+                    termCount[0]++;
+                    for (int i = 0; i < length; i++) {
+                        maxScore[0] = Math.max(maxScore[0], Math.abs(scores[i]));
+                    }
+                });
+        double scale = maxScore[0] > 0 ? maxScore[0] / LEVELS : 1;
+
+        List<String> terms = new ArrayList<>(termCount[0]);
+        int[] dfs = new int[termCount[0]];
+        long[] offsets = new long[termCount[0]];
+        try (OutputStream impactsOut = new BufferedOutputStream(new FileOutputStream(
+                indexDir + "/" + ImpactIndex.IMPACTS_FILE))) {
+            long[] offset = { 0 };
+            int[] counts = new int[2 * LEVELS + 1];
+            ByteArrayOutputStream[] levels = new ByteArrayOutputStream[2 * LEVELS + 1];
+            int[] previousDocIds = new int[2 * LEVELS + 1];
+            forEachTerm(index, dictionaries, postings, docLengths, totalDocs, averageDocLength,
+                    (term, df, docIds, scores, length) -> {
+                        Arrays.fill(counts, 0);
+                        Arrays.fill(previousDocIds, 0);
+                        for (int i = 0; i < length; i++) {
+                            if (scores[i] == 0) {
+                                continue;
+                            }
+                            int impact = (int) Math.round(scores[i] / scale);
+                            if (impact == 0) {
+                                impact = scores[i] > 0 ? 1 : -1;
+                            }
+                            int level = LEVELS + impact;
+                            if (levels[level] == null) {
+                                levels[level] = new ByteArrayOutputStream();
+                            }
+                            PostingsCodec.writeVInt(levels[level], docIds[i] - previousDocIds[level]);
+                            previousDocIds[level] = docIds[i];
+                            counts[level]++;
+                        }
+
+                        dfs[terms.size()] = df;
+                        offsets[terms.size()] = offset[0];
+                        terms.add(term);
+                        int segments = 0;
+                        for (int level = 0; level < counts.length; level++) {
+                            if (counts[level] > 0) {
+                                segments++;
+                            }
+                        }
+                        offset[0] += PostingsCodec.writeVInt(impactsOut, segments);
+                        for (int i = 0; i < 2 * LEVELS; i++) {
+                            int impact = i < LEVELS ? LEVELS - i : LEVELS - i - 1;
+                            int level = LEVELS + impact;
+                            if (counts[level] == 0) {
+                                continue;
+                            }
+                            offset[0] += PostingsCodec.writeVInt(impactsOut, (impact << 1) ^ (impact >> 31));
+                            offset[0] += PostingsCodec.writeVInt(impactsOut, counts[level]);
+                            offset[0] += PostingsCodec.writeVInt(impactsOut, levels[level].size());
+                            levels[level].writeTo(impactsOut);
+                            offset[0] += levels[level].size();
+                            levels[level].reset();
+                        }
+                    });
+        }
+        TermDictionaryWriter.write(terms, dfs, offsets, indexDir + "/" + ImpactIndex.DICTIONARY_FILE);
+        try (DataOutputStream headerOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexDir + "/" + ImpactIndex.HEADER_FILE)))) {
+            headerOut.writeInt(totalDocs);
+            headerOut.writeInt(terms.size());
+            headerOut.writeDouble(scale);
+        }
+    }
+
+    private interface TermPostingsConsumer {
+        void accept(String term, int df, int[] docIds, double[] scores, int length) throws IOException;
+    }
+
+    private static void forEachTerm(SegmentedIndex index, TermDictionary[] dictionaries, ByteBuffer[] postings,
+            DocLengths docLengths, int totalDocs, double averageDocLength, TermPostingsConsumer consumer)
+            throws IOException {
+        PriorityQueue<SegmentedIndex.TermCursor> queue = SegmentedIndex.TermCursor.open(dictionaries);
+        SegmentedIndex.TermCursor[] sameTerm = new SegmentedIndex.TermCursor[dictionaries.length];
+        int[] docIds = new int[16];
+        int[] tfs = new int[16];
+        double[] scores = new double[16];
+        while (!queue.isEmpty()) {
+            byte[] term = queue.peek().bytes;
+            int cursors = 0;
+            int df = 0;
+            while (!queue.isEmpty() && Arrays.equals(queue.peek().bytes, term)) {
+                SegmentedIndex.TermCursor cursor = queue.poll();
+                sameTerm[cursors++] = cursor;
+                df += cursor.entry.getDf();
+            }
+            if (df > docIds.length) {
+                docIds = new int[df];
+                tfs = new int[df];
+                scores = new double[df];
+            }
+
+            int length = 0;
+            for (int i = 0; i < cursors; i++) {
+                int segment = sameTerm[i].segment;
+                TermDictionary.Entry entry = sameTerm[i].entry;
+                int[] segmentDocIds = new int[entry.getDf()];
+                int[] segmentTfs = new int[entry.getDf()];
+                PostingsCodec.decodePostings(postings[segment], entry.getPostingsOffset(), entry.getDf(),
+                        segmentDocIds, segmentTfs);
+                for (int j = 0; j < entry.getDf(); j++) {
+                    docIds[length] = index.getDocBase(segment) + segmentDocIds[j];
+                    tfs[length] = segmentTfs[j];
+                    scores[length] = BM25.calculateBM25Score(tfs[length], df, docLengths.get(docIds[length]),
+                            totalDocs, averageDocLength);
+                    length++;
+                }
+            }
+            consumer.accept(sameTerm[0].entry.getTerm(), df, docIds, scores, length);
+
+            for (int i = 0; i < cursors; i++) {
+                if (sameTerm[i].next()) {
+                    queue.add(sameTerm[i]);
+                }
+            }
+        }
+    }
+}
@@ -1,21 +1,52 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class IndexEngine {
 
-    static ArrayList<Integer> docLengths = new ArrayList<>();
-    static ArrayList<Map<String, String>> metaDataArray = new ArrayList<>();
     static boolean stem = false;
 
+    private static final Pattern DOCNO_PATTERN = Pattern.compile("<DOCNO>(.+?)</DOCNO>");
+    private static final Pattern HEADLINE_PARAGRAPH_PATTERN = Pattern.compile("<HEADLINE>\\s*<P>(.*?)</P>",
+            Pattern.DOTALL);
+    private static final Pattern HEADLINE_TAG_PATTERN = Pattern.compile("<HEADLINE>(.*?)</HEADLINE>", Pattern.DOTALL);
+    private static final Pattern TEXT_TAG_PATTERN = Pattern.compile("<TEXT>(.*?)</TEXT>", Pattern.DOTALL);
+    private static final Pattern GRAPHIC_TAG_PATTERN = Pattern.compile("<GRAPHIC>(.*?)</GRAPHIC>", Pattern.DOTALL);
+    private static final Pattern MARKUP_TAG_PATTERN = Pattern.compile("<[^>]+>");
+
+    private static final ParsedDocument END_OF_INPUT = new ParsedDocument(null, null, null, 0, -1);
+
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("index_read");
+    private static final Metrics.Timer EXTRACT_TIMER = Metrics.timer("index_extract");
+    private static final Metrics.Timer TOKENIZE_TIMER = Metrics.timer("index_tokenize");
+    private static final Metrics.Timer RECORD_TIMER = Metrics.timer("index_record");
+    private static final Metrics.Timer POSTINGS_TIMER = Metrics.timer("index_postings");
+    private static final Metrics.Timer STORE_TIMER = Metrics.timer("index_store");
+    private static final Metrics.Timer FLUSH_RUN_TIMER = Metrics.timer("index_flush_run");
+    private static final Metrics.Timer SAVE_DOC_LENGTHS_TIMER = Metrics.timer("index_save_doc_lengths");
+    private static final Metrics.Timer SAVE_METADATA_TIMER = Metrics.timer("index_save_metadata");
+    private static final Metrics.Timer SAVE_POSTINGS_TIMER = Metrics.timer("index_save_postings");
+    private static final Metrics.Timer SAVE_LEXICON_TIMER = Metrics.timer("index_save_lexicon");
+    private static final Metrics.Counter DOCUMENTS = Metrics.counter("index_documents", "Documents indexed");
+    private static final Metrics.Counter TOKENS = Metrics.counter("index_tokens", "Tokens indexed");
+    private static final Metrics.Counter TERMS = Metrics.counter("index_terms", "Distinct terms in the segment");
+
     public static void main(String[] args) {
+        String metricsFile = Metrics.enable(args);
         Scanner scanner = new Scanner(System.in);
         System.out.println("Enter the file path for gzip");
 
@@ -26,7 +57,8 @@ public class IndexEngine {
 
         String filePath = scanner.nextLine();
 
-        System.out.println("Enter the folder path where the documents and meta data will be stored");
+        System.out.println("Enter the folder path where the documents and meta data will be stored"
+                + " (an existing index gets a new segment)");
 
         if (!scanner.hasNextLine()) {
             System.err.println("Error: No folder path provided!");
@@ -35,98 +67,265 @@ public class IndexEngine {
         String folderPath = scanner.nextLine();
 
         File directory = new File(folderPath);
-        if (directory.exists()) {
-            System.err.println("This directory already exists!");
+        if (directory.exists() && !Segments.exists(folderPath)) {
+            System.err.println("This directory already exists and is not a segmented index!");
             return;
         }
 
         System.out.println("Would you like to use Porter Stemming? (yes/no)");
         String stemResponse = scanner.nextLine();
         stem = "yes".equalsIgnoreCase(stemResponse.trim());
+        try {
+            Boolean indexStem = Segments.exists(folderPath) ? SegmentedIndex.readStem(folderPath) : null;
+            if (indexStem != null && indexStem != stem) {
+                System.err.println("This index was built " + (indexStem ? "with" : "without")
+                        + " stemming; new segments must be analyzed the same way!");
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        System.out.println("Enter the memory budget for in-memory postings in MB (leave blank for no limit)");
+        long memoryBudget = 0;
+        if (scanner.hasNextLine()) {
+            String budgetResponse = scanner.nextLine().trim();
+            if (!budgetResponse.isEmpty()) {
+                memoryBudget = Long.parseLong(budgetResponse) * 1024 * 1024;
+            }
+        }
+
+        System.out.println("Enter the number of indexing threads (leave blank to use every core)");
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (scanner.hasNextLine()) {
+            String threadsResponse = scanner.nextLine().trim();
+            if (!threadsResponse.isEmpty()) {
+                threads = Integer.parseInt(threadsResponse);
+            }
+        }
+
+        System.out.println("Would you like to compress the document store? (yes/no)");
+        boolean compressDocuments = false;
+        if (scanner.hasNextLine()) {
+            compressDocuments = "yes".equalsIgnoreCase(scanner.nextLine().trim());
+        }
+
+        System.out.println("Would you like to store term positions for phrase queries? (yes/no)");
+        boolean positional = false;
+        if (scanner.hasNextLine()) {
+            positional = "yes".equalsIgnoreCase(scanner.nextLine().trim());
+        }
+
+        System.out.println("Would you like to build impact-ordered postings for score-at-a-time queries? (yes/no)");
+        boolean impactOrdered = false;
+        if (scanner.hasNextLine()) {
+            impactOrdered = "yes".equalsIgnoreCase(scanner.nextLine().trim());
+        }
+
+        boolean newIndex = !directory.exists();
+        directory.mkdirs();
+        String segment = null;
+        try {
+            if (!newIndex) {
+                Segments.deletePending(folderPath);
+            }
+            segment = Segments.newSegmentName(folderPath);
+            getDocument(filePath, folderPath + "/" + segment, stem, memoryBudget, threads, compressDocuments,
+                    positional);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (newIndex) {
+                SegmentMerger.deleteRecursively(directory);
+            } else if (segment != null) {
+                SegmentMerger.deleteRecursively(new File(folderPath, segment));
+            }
+            return;
+        }
+        try {
+            // the impact-ordered copy covers the old segments only, so it goes before the new one is listed
+            if (!impactOrdered) {
+                ImpactIndex.delete(folderPath);
+            }
+            Segments.add(folderPath, segment);
+            if (impactOrdered) {
+                ImpactIndexWriter.write(folderPath);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Metrics.write(metricsFile);
 
-        getDocument(filePath, folderPath, stem);
-        storeMetaData(folderPath);
+        Thread merger = new Thread(() -> SegmentMerger.maybeMerge(folderPath), "segment-merger");
+        merger.start();
 
     }
 
-    public static void getDocument(String filePath, String folderPath, boolean stem) {
-        try (BufferedReader in = new BufferedReader(
-                new InputStreamReader(new GZIPInputStream(new FileInputStream(filePath))))) {
-            String nextLine;
-            String documentText = "";
-            int id = 0;
+    public static void getDocument(String filePath, String folderPath, boolean stem) throws IOException {
+        getDocument(filePath, folderPath, stem, 0, Runtime.getRuntime().availableProcessors(), false, false);
+    }
+
+    // the segment is complete when this returns; a failure throws and leaves the caller to discard it
+    public static void getDocument(String filePath, String folderPath, boolean stem, long memoryBudget,
+            int threads, boolean compressDocuments, boolean positional) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        BlockingQueue<Future<ParsedDocument>> parsedDocuments = new ArrayBlockingQueue<>(threads * 16);
+        Thread reader = new Thread(() -> readDocuments(filePath, stem, workers, parsedDocuments),
+                "gzip-reader");
+        reader.start();
 
-            Map<String, Integer> lexicon = new HashMap<>();
-            Map<Integer, String> IdToTerm = new HashMap<>();
-            Map<Integer, List<List<Integer>>> invertedIndex = new HashMap<>();
-            while ((nextLine = in.readLine()) != null) {
-                documentText += nextLine + "\n";
-                if (nextLine.contains("</DOC>")) {
-                    String textFromDoc = extractTextFromTags(documentText);
-                    List<String> tokens = tokenize(textFromDoc, stem);
-                    docLengths.add(tokens.size());
-                    List<Integer> tokenIDs = convertTokenToIDs(tokens, lexicon, IdToTerm);
-                    Map<Integer, Integer> countWords = countWords(tokenIDs);
-                    addToPostings(countWords, id, invertedIndex);
-
-                    Map<String, String> mapMetaData = getMetaData(documentText, id);
-                    saveDocument(documentText, folderPath, mapMetaData);
-                    id++;
-                    documentText = "";
+        try (DocumentStoreWriter documentStore = new DocumentStoreWriter(folderPath, compressDocuments)) {
+            int id = 0;
+            Lexicon lexicon = new Lexicon();
+            PostingsBuffer invertedIndex = new PostingsBuffer(positional);
+            ArrayList<Integer> docLengths = new ArrayList<>();
+            DocumentMetaDataWriter metaDataColumns = new DocumentMetaDataWriter();
+            List<String> runPaths = new ArrayList<>();
+
+            ParsedDocument document;
+            while ((document = parsedDocuments.take().get()) != END_OF_INPUT) {
+                long start = Metrics.start();
+                docLengths.add(document.tokens.size());
+                int[] tokenIDs = convertTokenToIDs(document.tokens, lexicon);
+                addToPostings(tokenIDs, id, invertedIndex);
+                POSTINGS_TIMER.stop(start);
+                DOCUMENTS.add(1);
+                TOKENS.add(tokenIDs.length);
+                if (memoryBudget > 0 && invertedIndex.getEstimatedBytes() >= memoryBudget) {
+                    start = Metrics.start();
+                    runPaths.add(IndexRuns.writeRun(invertedIndex, folderPath, runPaths.size()));
+                    invertedIndex.clear();
+                    FLUSH_RUN_TIMER.stopPhase(start);
                 }
+                start = Metrics.start();
+                metaDataColumns.add(document.metaData.get("DOCNO"), document.metaData.get("Date"),
+                        document.headlineOffset, document.headlineLength);
+                documentStore.append(document.record);
+                STORE_TIMER.stop(start);
+                id++;
+            }
 
+            long start = Metrics.start();
+            saveDocLength(docLengths, folderPath);
+            SAVE_DOC_LENGTHS_TIMER.stopPhase(start);
+            start = Metrics.start();
+            storeMetaData(metaDataColumns, folderPath);
+            SAVE_METADATA_TIMER.stopPhase(start);
+            start = Metrics.start();
+            if (runPaths.isEmpty()) {
+                saveInvertedIndex(invertedIndex, folderPath, docLengths);
+            } else {
+                runPaths.add(IndexRuns.writeRun(invertedIndex, folderPath, runPaths.size()));
+                invertedIndex.clear();
+                IndexRuns.mergeRuns(runPaths, lexicon.size(), folderPath, positional, docLengths);
             }
+            SAVE_POSTINGS_TIMER.stopPhase(start);
+            start = Metrics.start();
+            saveLexicon(lexicon.getTerms(), folderPath);
+            Analyzer.get(stem).write(folderPath);
+            SAVE_LEXICON_TIMER.stopPhase(start);
+            TERMS.add(lexicon.size());
+
+        } catch (ExecutionException e) {
+            throw new IOException("could not index " + filePath, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("indexing " + filePath + " was interrupted");
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+    }
 
-            saveDocLength(folderPath);
-            saveLexicon(lexicon, folderPath);
-            saveIdToTerm(IdToTerm, folderPath);
-            saveInvertedIndex(invertedIndex, folderPath);
+    private static void readDocuments(String filePath, boolean stem, ExecutorService workers,
+            BlockingQueue<Future<ParsedDocument>> parsedDocuments) {
+        try (TrecDocumentReader in = new TrecDocumentReader(
+                new InputStreamReader(new GZIPInputStream(new FileInputStream(filePath), 1 << 16)))) {
+            char[] documentText;
+            int id = 0;
 
+            long start = Metrics.start();
+            while ((documentText = in.nextDocument()) != null) {
+                READ_TIMER.stop(start);
+                char[] text = documentText;
+                int docId = id;
+                parsedDocuments.put(workers.submit(() -> parseDocument(text, docId, stem)));
+                id++;
+                start = Metrics.start();
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            try {
+                parsedDocuments.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        try {
+            parsedDocuments.put(CompletableFuture.completedFuture(END_OF_INPUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    public static void saveDocument(String documentText, String folderPath, Map<String, String> mapMetaData) {
-
-        String dateFile = mapMetaData.get("Date");
-        String[] splitPartsofDate = dateFile.split("-");
-        String year = splitPartsofDate[2];
-        String month = splitPartsofDate[0];
-        String day = splitPartsofDate[1];
-
-        String directoryPath = folderPath + "/" + year + "/" + month + "/" + day;
-        String fileName = mapMetaData.get("DOCNO");
-        String pathToFile = directoryPath + "/" + fileName + ".txt";
-        File file = new File(pathToFile);
-        File parentDir = file.getParentFile();
-        parentDir.mkdirs();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(pathToFile))) {
-            writer.write("docno:" + mapMetaData.get("DOCNO"));
-            writer.newLine();
-            writer.write("internal id:" + mapMetaData.get("id"));
-            writer.newLine();
-            writer.write("date:" + mapMetaData.get("Date"));
-            writer.newLine();
-            writer.write("headline:" + mapMetaData.get("Headline"));
-            writer.newLine();
-            writer.write("raw document:");
-            writer.newLine();
-            writer.write(documentText);
-            writer.close();
+    public static ParsedDocument parseDocument(char[] documentText, int id, boolean stem) {
+        long start = Metrics.start();
+        TrecDocument document = new TrecDocument(documentText);
+        EXTRACT_TIMER.stop(start);
+        start = Metrics.start();
+        TokenBuffer tokens = new TokenBuffer();
+        document.tokenize(Analyzer.get(stem), tokens);
+        TOKENIZE_TIMER.stop(start);
+        start = Metrics.start();
+        Map<String, String> mapMetaData = document.getMetaData(id);
+        String header = formatHeader(mapMetaData);
+        String headline = mapMetaData.get("Headline");
+
+        StringBuilder record = new StringBuilder(header.length() + documentText.length + 128);
+        record.append(header).append(headline).append('\n');
+        record.append("raw document:").append('\n');
+        record.append(documentText);
+
+        int headlineOffset = header.getBytes(StandardCharsets.UTF_8).length;
+        int headlineLength = headline == null ? -1 : headline.getBytes(StandardCharsets.UTF_8).length;
+        RECORD_TIMER.stop(start);
+        return new ParsedDocument(tokens, mapMetaData, record.toString().getBytes(StandardCharsets.UTF_8),
+                headlineOffset, headlineLength);
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    static class ParsedDocument {
+        private final TokenBuffer tokens;
+        private final Map<String, String> metaData;
+        private final byte[] record;
+        private final int headlineOffset;
+        private final int headlineLength;
+
+        public ParsedDocument(TokenBuffer tokens, Map<String, String> metaData, byte[] record, int headlineOffset,
+                int headlineLength) {
+            this.tokens = tokens;
+            this.metaData = metaData;
+            this.record = record;
+            this.headlineOffset = headlineOffset;
+            this.headlineLength = headlineLength;
         }
+    }
 
+    public static String formatHeader(Map<String, String> mapMetaData) {
+        return "docno:" + mapMetaData.get("DOCNO") + "\n"
+                + "internal id:" + mapMetaData.get("id") + "\n"
+                + "date:" + mapMetaData.get("Date") + "\n"
+                + "headline:";
     }
 
     public static Map<String, String> getMetaData(String documentText, int id) {
 
         Map<String, String> mapMetaData = new HashMap<>();
         mapMetaData.put("id", String.valueOf(id));
-        Pattern pattern = Pattern.compile("<DOCNO>(.+?)</DOCNO>");
-        Matcher matcher = pattern.matcher(documentText);
+        Matcher matcher = DOCNO_PATTERN.matcher(documentText);
 
         if (matcher.find()) {
             String docNumber = matcher.group(1).trim();
@@ -137,30 +336,18 @@ public class IndexEngine {
                     docNo.substring(3, 5) + "-" + docNo.substring(5, 7) + "-19" + docNo.substring(7, 9));
         }
 
-        Pattern pattern2 = Pattern.compile("<HEADLINE>\\s*<P>(.*?)</P>", Pattern.DOTALL);
-        Matcher matcher2 = pattern2.matcher(documentText);
+        Matcher matcher2 = HEADLINE_PARAGRAPH_PATTERN.matcher(documentText);
 
         if (matcher2.find()) {
             String headline = matcher2.group(1).trim();
             mapMetaData.put("Headline", headline);
         }
 
-        metaDataArray.add(mapMetaData);
         return mapMetaData;
     }
 
-    public static void storeMetaData(String folderPath) {
-        String directoryPath = folderPath;
-        String fileName = "metadata";
-        String pathToFile = directoryPath + "/" + fileName + ".ser";
-        File file = new File(pathToFile);
-        File parentDir = file.getParentFile();
-        parentDir.mkdirs();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(pathToFile))) {
-            oos.writeObject(metaDataArray);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public static void storeMetaData(DocumentMetaDataWriter metaDataColumns, String folderPath) throws IOException {
+        metaDataColumns.write(folderPath);
     }
 
     public static String extractTextFromTags(String documentText) {
@@ -169,153 +356,59 @@ public class IndexEngine {
 
         String docText = "";
 
-        Pattern headlineTagPattern = Pattern.compile("<HEADLINE>(.*?)</HEADLINE>", Pattern.DOTALL);
-        Matcher headlineTagMatcher = headlineTagPattern.matcher(documentText);
+        Matcher headlineTagMatcher = HEADLINE_TAG_PATTERN.matcher(documentText);
 
         if (headlineTagMatcher.find()) {
             docText += " " + headlineTagMatcher.group(1);
         }
 
-        Pattern textTagPattern = Pattern.compile("<TEXT>(.*?)</TEXT>", Pattern.DOTALL);
-        Matcher textTagMatcher = textTagPattern.matcher(documentText);
+        Matcher textTagMatcher = TEXT_TAG_PATTERN.matcher(documentText);
 
         if (textTagMatcher.find()) {
             docText += " " + textTagMatcher.group(1);
         }
 
-        Pattern graphicTagPattern = Pattern.compile("<GRAPHIC>(.*?)</GRAPHIC>", Pattern.DOTALL);
-        Matcher graphicTagMatcher = graphicTagPattern.matcher(documentText);
+        Matcher graphicTagMatcher = GRAPHIC_TAG_PATTERN.matcher(documentText);
 
         if (graphicTagMatcher.find()) {
             docText += " " + graphicTagMatcher.group(1);
         }
 
-        docText = docText.replaceAll("<[^>]+>", "");
+        docText = MARKUP_TAG_PATTERN.matcher(docText).replaceAll("");
 
         return docText;
 
     }
 
     public static List<String> tokenize(String text, boolean stem) {
-
-        List<String> tokens = new ArrayList<>();
-        text = text.toLowerCase();
-        int start = 0;
-
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-
-            if (!Character.isLetterOrDigit(c)) {
-                if (start != i) {
-                    String token = text.substring(start, i);
-                    if (stem) {
-                        token = PorterStemmer.stem(token);
-                    }
-                    tokens.add(token);
-                }
-
-                start = i + 1;
-
-            }
-        }
-
-        if (start != text.length()) {
-            String token = text.substring(start, text.length());
-            if (stem) {
-                token = PorterStemmer.stem(token);
-            }
-            tokens.add(token);
-        }
-
-        return tokens;
-
+        return Analyzer.get(stem).tokenize(text);
     }
 
-    public static void saveDocLength(String folderPath) {
-        serializeAndSave(docLengths, folderPath, "doc-lengths");
-
+    public static void saveDocLength(List<Integer> docLengths, String folderPath) throws IOException {
+        DocLengths.write(docLengths, folderPath);
     }
 
-    public static List<Integer> convertTokenToIDs(List<String> tokens, Map<String, Integer> lexicon,
-            Map<Integer, String> IdToTerm) {
+    public static int[] convertTokenToIDs(TokenBuffer tokens, Lexicon lexicon) {
 
-        List<Integer> tokenIDs = new ArrayList<>();
-
-        for (String token : tokens) {
-            if (lexicon.containsKey(token)) {
-                tokenIDs.add(lexicon.get(token));
-            } else {
-                int id = lexicon.size();
-                lexicon.put(token, id);
-                IdToTerm.put(id, token);
-                tokenIDs.add(id);
-            }
+        int[] tokenIDs = new int[tokens.size()];
 
+        for (int i = 0; i < tokenIDs.length; i++) {
+            tokenIDs[i] = lexicon.getTermId(tokens.getChars(), tokens.getStart(i), tokens.getLength(i));
         }
         return tokenIDs;
     }
 
-    public static Map<Integer, Integer> countWords(List<Integer> tokenIds) {
-
-        Map<Integer, Integer> wordCounts = new HashMap<>();
-
-        for (int id : tokenIds) {
-            if (wordCounts.containsKey(id)) {
-                wordCounts.put(id, wordCounts.get(id) + 1);
-            } else {
-                wordCounts.put(id, 1);
-            }
-        }
-        return wordCounts;
+    public static void addToPostings(int[] tokenIDs, int docID, PostingsBuffer invertedIndex) {
+        invertedIndex.addDocument(docID, tokenIDs, tokenIDs.length);
     }
 
-    public static void addToPostings(Map<Integer, Integer> wordCounts, int docID,
-            Map<Integer, List<List<Integer>>> invertedIndex) {
-        for (Integer termID : wordCounts.keySet()) {
-            int count = wordCounts.get(termID);
-
-            List<List<Integer>> postings;
-            if (invertedIndex.containsKey(termID)) {
-                postings = invertedIndex.get(termID);
-            } else {
-                postings = new ArrayList<>();
-                invertedIndex.put(termID, postings);
-            }
-
-            List<Integer> posting = new ArrayList<>();
-            posting.add(docID);
-            posting.add(count);
-
-            postings.add(posting);
-
-        }
-
-    }
-
-    public static void saveLexicon(Map<String, Integer> lexicon, String folderPath) {
-        serializeAndSave(lexicon, folderPath, "lexicon");
+    public static void saveLexicon(List<String> IdToTerm, String folderPath) throws IOException {
+        TermDictionaryWriter.write(IdToTerm, folderPath);
     }
 
-    public static void saveIdToTerm(Map<Integer, String> IdToTerm, String folderPath) {
-        serializeAndSave(IdToTerm, folderPath, "IdToTerm");
-    }
-
-    public static void saveInvertedIndex(Map<Integer, List<List<Integer>>> invertedIndex, String folderPath) {
-        serializeAndSave(invertedIndex, folderPath, "invertedIndex");
-    }
-
-    private static void serializeAndSave(Object object, String folderPath, String fileName) {
-        String pathToFile = folderPath + "/" + fileName + ".ser";
-        File file = new File(pathToFile);
-        File parentDir = file.getParentFile();
-        parentDir.mkdirs();
-
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(object);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public static void saveInvertedIndex(PostingsBuffer invertedIndex, String folderPath, List<Integer> docLengths)
+            throws IOException {
+        PostingsCodec.saveInvertedIndex(invertedIndex, folderPath, docLengths);
     }
-    
 
 }
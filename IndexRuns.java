@@ -0,0 +1,245 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * A run is a partial index flushed when the in-memory postings reach the memory budget. It lists the
+ * non-empty terms in termId order as varint termId, varint df and df (docid gap, tf) varint pairs; in a
+ * positional run each pair is followed by its tf varint position gaps. Runs are written in docid order,
+ * so concatenating a term's postings across runs keeps them sorted.
+ * At most MAX_FAN_IN runs are open at once: with more, consecutive groups are first merged into larger
+ * runs, pass by pass, and every run file is deleted whether or not the merge succeeds.
+ */
+public class IndexRuns {
+
+    static final int MAX_FAN_IN = 64;
+
+    public static String writeRun(PostingsBuffer invertedIndex, String folderPath, int runNumber) throws IOException {
+        File runFile = new File(folderPath + "/run-" + runNumber + ".bin");
+        runFile.getParentFile().mkdirs();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(runFile))) {
+            for (int termId : invertedIndex.getTermIds()) {
+                int df = invertedIndex.getDocumentFrequency(termId);
+                PostingsCodec.writeVInt(out, termId);
+                PostingsCodec.writeVInt(out, df);
+                int previousDocId = 0;
+                int positionIndex = 0;
+                for (int i = 0; i < df; i++) {
+                    int docId = invertedIndex.getDocId(termId, i);
+                    int tf = invertedIndex.getTermFrequency(termId, i);
+                    PostingsCodec.writeVInt(out, docId - previousDocId);
+                    PostingsCodec.writeVInt(out, tf);
+                    previousDocId = docId;
+                    if (invertedIndex.isPositional()) {
+                        int[] positions = invertedIndex.getPositions(termId);
+                        int previousPosition = 0;
+                        for (int j = positionIndex; j < positionIndex + tf; j++) {
+                            PostingsCodec.writeVInt(out, positions[j] - previousPosition);
+                            previousPosition = positions[j];
+                        }
+                        positionIndex += tf;
+                    }
+                }
+            }
+        }
+        return runFile.getPath();
+    }
+
+    public static void mergeRuns(List<String> runPaths, int termCount, String folderPath) throws IOException {
+        mergeRuns(runPaths, termCount, folderPath, false, null);
+    }
+
+    public static void mergeRuns(List<String> runPaths, int termCount, String folderPath, boolean positional,
+            List<Integer> docLengths) throws IOException {
+        List<String> created = new ArrayList<>(runPaths);
+        try {
+            List<String> remaining = runPaths;
+            int nextRun = runPaths.size();
+            while (remaining.size() > MAX_FAN_IN) {
+                List<String> merged = new ArrayList<>();
+                for (int from = 0; from < remaining.size(); from += MAX_FAN_IN) {
+                    List<String> group = remaining.subList(from, Math.min(from + MAX_FAN_IN, remaining.size()));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    String runPath = folderPath + "/run-" + nextRun++ + ".bin";
+                    created.add(runPath);
+                    try (RunWriter out = new RunWriter(runPath, positional)) {
+                        merge(group, positional, out);
+                    }
+                    for (String input : group) {
+                        new File(input).delete();
+                    }
+                    merged.add(runPath);
+                }
+                remaining = merged;
+            }
+
+            try (PostingsWriter writer = new PostingsWriter(folderPath, termCount, positional, docLengths)) {
+                merge(remaining, positional, new PostingsSink() {
+                    public void startTerm(int termId, int df) throws IOException {
+                        writer.startTerm(termId, df);
+                    }
+
+                    public void addPosting(int docId, int tf) throws IOException {
+                        writer.addPosting(docId, tf);
+                    }
+
+                    public void addPositions(int[] positions, int count) throws IOException {
+                        writer.addPositions(positions, 0, count);
+                    }
+                });
+            }
+        } finally {
+            for (String runPath : created) {
+                new File(runPath).delete();
+            }
+        }
+    }
+
+    private interface PostingsSink {
+        void startTerm(int termId, int df) throws IOException;
+
+        void addPosting(int docId, int tf) throws IOException;
+
+        void addPositions(int[] positions, int count) throws IOException;
+    }
+
+    private static void merge(List<String> runPaths, boolean positional, PostingsSink out) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runPaths.size()), (a, b) -> {
+            if (a.termId != b.termId) {
+                return Integer.compare(a.termId, b.termId);
+            }
+            return Integer.compare(a.runNumber, b.runNumber);
+        });
+
+        int[] positions = new int[16];
+        try {
+            for (int i = 0; i < runPaths.size(); i++) {
+                RunReader reader = new RunReader(runPaths.get(i), i);
+                if (reader.nextTerm()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            RunReader[] sameTerm = new RunReader[runPaths.size()];
+            while (!queue.isEmpty()) {
+                int termId = queue.peek().termId;
+                int readers = 0;
+                int df = 0;
+                while (!queue.isEmpty() && queue.peek().termId == termId) {
+                    RunReader reader = queue.poll();
+                    sameTerm[readers++] = reader;
+                    df += reader.df;
+                }
+
+                out.startTerm(termId, df);
+                for (int i = 0; i < readers; i++) {
+                    RunReader reader = sameTerm[i];
+                    int docId = 0;
+                    for (int j = 0; j < reader.df; j++) {
+                        docId += PostingsCodec.readVInt(reader.in);
+                        int tf = PostingsCodec.readVInt(reader.in);
+                        out.addPosting(docId, tf);
+                        if (positional) {
+                            if (tf > positions.length) {
+                                positions = new int[Math.max(tf, positions.length * 2)];
+                            }
+                            int position = 0;
+                            for (int k = 0; k < tf; k++) {
+                                position += PostingsCodec.readVInt(reader.in);
+                                positions[k] = position;
+                            }
+                            out.addPositions(positions, tf);
+                        }
+                    }
+                    if (reader.nextTerm()) {
+                        queue.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    // writes merged postings back in the run layout, for the intermediate passes of a wide merge
+    private static class RunWriter implements PostingsSink, Closeable {
+        private final OutputStream out;
+        private final boolean positional;
+        private int previousDocId;
+
+        RunWriter(String runPath, boolean positional) throws IOException {
+            this.out = new BufferedOutputStream(new FileOutputStream(runPath), 1 << 16);
+            this.positional = positional;
+        }
+
+        public void startTerm(int termId, int df) throws IOException {
+            PostingsCodec.writeVInt(out, termId);
+            PostingsCodec.writeVInt(out, df);
+            previousDocId = 0;
+        }
+
+        public void addPosting(int docId, int tf) throws IOException {
+            PostingsCodec.writeVInt(out, docId - previousDocId);
+            PostingsCodec.writeVInt(out, tf);
+            previousDocId = docId;
+        }
+
+        public void addPositions(int[] positions, int count) throws IOException {
+            int previousPosition = 0;
+            for (int i = 0; i < count; i++) {
+                PostingsCodec.writeVInt(out, positions[i] - previousPosition);
+                previousPosition = positions[i];
+            }
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static class RunReader {
+        private final InputStream in;
+        private final int runNumber;
+        private int termId;
+        private int df;
+
+        RunReader(String runPath, int runNumber) throws IOException {
+            this.in = new BufferedInputStream(new FileInputStream(runPath), 1 << 16);
+            this.runNumber = runNumber;
+        }
+
+        boolean nextTerm() throws IOException {
+            try {
+                termId = PostingsCodec.readVInt(in);
+            } catch (EOFException e) {
+                return false;
+            }
+            df = PostingsCodec.readVInt(in);
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
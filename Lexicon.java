@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Assigns termIds in order of first appearance while a segment is indexed. A term is found by hashing its
+ * characters where the analyzer left them, in an open-addressing table over a packed copy of every term,
+ * so a token that is already known costs no object; a term's String is made once, when it is first seen,
+ * for the dictionary.
+ */
+public class Lexicon {
+
+    // termId + 1 per slot, 0 for an empty slot; kept at most half full
+    private int[] table = new int[1 << 12];
+    private int[] hashes = new int[1 << 10];
+    private int[] ends = new int[1 << 10];
+    private char[] chars = new char[1 << 14];
+    private final List<String> terms = new ArrayList<>();
+
+    public int getTermId(char[] term, int offset, int length) {
+        int hash = hash(term, offset, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int termId = table[slot] - 1;
+            if (termId < 0) {
+                return add(slot, hash, term, offset, length);
+            }
+            if (hashes[termId] == hash && equals(termId, term, offset, length)) {
+                return termId;
+            }
+        }
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    // the terms by termId
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    private static int hash(char[] term, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + term[i];
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean equals(int termId, char[] term, int offset, int length) {
+        int start = termId == 0 ? 0 : ends[termId - 1];
+        return ends[termId] - start == length
+                && Arrays.equals(chars, start, start + length, term, offset, offset + length);
+    }
+
+    private int add(int slot, int hash, char[] term, int offset, int length) {
+        int termId = terms.size();
+        int start = termId == 0 ? 0 : ends[termId - 1];
+        if (start + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(start + length, chars.length * 2));
+        }
+        if (termId == ends.length) {
+            ends = Arrays.copyOf(ends, termId * 2);
+            hashes = Arrays.copyOf(hashes, termId * 2);
+        }
+        System.arraycopy(term, offset, chars, start, length);
+        ends[termId] = start + length;
+        hashes[termId] = hash;
+        terms.add(new String(term, offset, length));
+        table[slot] = termId + 1;
+        if (2 * terms.size() > table.length) {
+            rehash();
+        }
+        return termId;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int termId = 0; termId < terms.size(); termId++) {
+            int slot = hashes[termId] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = termId + 1;
+        }
+    }
+}
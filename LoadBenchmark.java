@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * End-to-end load test on one machine: indexes a TREC-format gzip file (for example one written by
+ * SyntheticCorpus) into a new index, then runs every topic of a queries file through exhaustive BM25 and
+ * through BooleanAnd. A query is timed from its text to its formatted run lines, so tokenizing, planning,
+ * scoring and DOCNO lookups are all included. The first pass over the topics warms the JIT and the page
+ * cache and is not reported; the remaining passes report queries/sec and p50/p95/p99 latency.
+ *   java LoadBenchmark <corpus.gz> <queries-file> <new-index-directory> <Stem/No> [passes] [--threads=N]
+ */
+public class LoadBenchmark {
+
+    static final int DEFAULT_PASSES = 5;
+
+    public static void main(String[] args) {
+        int threads = BatchRunner.parseThreads(args);
+        args = BatchRunner.withoutOptions(args);
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Please input: java LoadBenchmark <corpus.gz> <queries-file> <new-index-directory> <Stem/No> [passes] [--threads=N]");
+            return;
+        }
+
+        String corpusFile = args[0];
+        String queriesFile = args[1];
+        String indexDir = args[2];
+        boolean stem = args[3].equalsIgnoreCase("Stem");
+        int passes = Math.max(1, args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_PASSES);
+        if (new File(indexDir).exists()) {
+            System.err.println("The index directory must not exist yet!");
+            return;
+        }
+
+        try {
+            new File(indexDir).mkdirs();
+            String segment = Segments.newSegmentName(indexDir);
+            long start = System.nanoTime();
+            IndexEngine.getDocument(corpusFile, indexDir + "/" + segment, stem, 0, threads, false, false);
+            Segments.add(indexDir, segment);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            SegmentedIndex index = new SegmentedIndex(indexDir);
+            DocLengths docLengths = index.openDocLengths();
+            long bytes = new File(corpusFile).length();
+            System.out.printf("indexing: %d docs in %.1f s, %.0f docs/sec, %.1f MB/sec of gzip, %d threads%n",
+                    index.getDocumentCount(), seconds, index.getDocumentCount() / seconds, bytes / 1048576.0 / seconds,
+                    threads);
+
+            BM25Scorer scorer = new BM25Scorer(index, docLengths);
+            ThreadLocal<BM25Scorer> scorers = ThreadLocal.withInitial(scorer::copy);
+            ThreadLocal<TopKHeap> heaps = ThreadLocal.withInitial(() -> new TopKHeap(BM25.DEFAULT_K));
+            Map<Integer, String> queries = readQueries(queriesFile);
+            if (queries.isEmpty()) {
+                System.err.println("No topics in " + queriesFile);
+                return;
+            }
+            measure("bm25", queries, passes, threads, queryId -> {
+                TopKHeap topDocs = heaps.get();
+                scorers.get().search(BM25.tokenize(queries.get(queryId), stem), topDocs);
+                return BM25.formatBM25Output(queryId, topDocs, index);
+            });
+
+            BooleanSearch booleanSearch = new BooleanSearch(index, docLengths);
+            measure("and", queries, passes, threads, queryId -> {
+                BooleanQuery query = booleanSearch.plan(BooleanQuery.parse(queries.get(queryId), stem));
+                return BooleanAnd.formatOutput(queryId, booleanSearch.search(query, true), index);
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Map<Integer, String> readQueries(String queriesFile) throws IOException {
+        List<String> lines = Files.readAllLines(new File(queriesFile).toPath());
+        Map<Integer, String> queries = new HashMap<>();
+        for (int i = 0; i + 1 < lines.size(); i += 2) {
+            queries.put(Integer.parseInt(lines.get(i).trim()), lines.get(i + 1));
+        }
+        return queries;
+    }
+
+    private static void measure(String name, Map<Integer, String> queries, int passes, int threads,
+            Function<Integer, String> query) {
+        List<Integer> keys = new ArrayList<>(queries.keySet());
+        Collections.sort(keys);
+        long[] latencies = new long[keys.size() * passes];
+        int[] positions = new int[Collections.max(keys) + 1];
+        for (int i = 0; i < keys.size(); i++) {
+            positions[keys.get(i)] = i;
+        }
+
+        long nanos = 0;
+        long resultLines = 0;
+        for (int pass = 0; pass <= passes; pass++) {
+            int offset = (pass - 1) * keys.size();
+            long start = System.nanoTime();
+            String output = BatchRunner.run(keys, threads, queryId -> {
+                long queryStart = System.nanoTime();
+                String lines = query.apply(queryId);
+                if (offset >= 0) {
+                    latencies[offset + positions[queryId]] = System.nanoTime() - queryStart;
+                }
+                return lines;
+            });
+            if (pass > 0) {
+                nanos += System.nanoTime() - start;
+                resultLines += output.chars().filter(c -> c == '\n').count();
+            }
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%s: %d queries x %d passes, %.1f queries/sec, latency p50 %.3f ms, p95 %.3f ms, "
+                + "p99 %.3f ms, max %.3f ms, %.1f results/query%n", name, keys.size(), passes,
+                latencies.length * 1e9 / nanos, percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.95) / 1e6,
+                percentile(latencies, 0.99) / 1e6, latencies[latencies.length - 1] / 1e6,
+                (double) resultLines / latencies.length);
+    }
+
+    static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * fraction) - 1)];
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/*
+ * A least-recently-used cache bounded by an estimate of the bytes its values hold, with TinyLFU admission.
+ * Keys are spread over up to 16 stripes, each an access-ordered map with its own lock and an equal share
+ * of the budget, so query threads sharing the cache seldom wait on one another. Each stripe counts how
+ * often keys are asked for, hits and misses alike, in a count-min sketch of 4-bit counters that is halved
+ * every 10 additions per counter so old popularity fades. A new entry that needs room is admitted only
+ * when it is asked for more often than every entry it would evict, so a scan of one-off postings lists or
+ * results cannot flush the hot ones; an entry larger than its stripe is never admitted.
+ */
+public class LruCache<K, V> {
+
+    private static final long ENTRY_OVERHEAD = 64;
+    private static final int MAX_STRIPES = 16;
+    private static final long MIN_STRIPE_BYTES = 1 << 20;
+    // the sketch keeps a counter for every KB of a stripe, which overcounts entries smaller than that
+    private static final long BYTES_PER_COUNTER = 1 << 10;
+
+    private final String name;
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+    private final Stripe<K, V>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public LruCache(String name, long maxBytes, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        int stripeCount = (int) Math.max(1, Math.min(MAX_STRIPES,
+                Long.highestOneBit(maxBytes / MIN_STRIPE_BYTES)));
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(maxBytes / stripeCount);
+        }
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Stripe<K, V> stripeOf(int hash) {
+        return stripes[(hash >>> 28) & (stripes.length - 1)];
+    }
+
+    public V get(K key) {
+        int hash = hash(key);
+        Stripe<K, V> stripe = stripeOf(hash);
+        V value;
+        synchronized (stripe) {
+            stripe.sketch.increment(hash);
+            value = stripe.entries.get(key);
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    public void put(K key, V value) {
+        int hash = hash(key);
+        Stripe<K, V> stripe = stripeOf(hash);
+        long weight = weigher.applyAsLong(value) + ENTRY_OVERHEAD;
+        synchronized (stripe) {
+            if (weight > stripe.maxBytes) {
+                rejections.increment();
+                return;
+            }
+            V previous = stripe.entries.get(key);
+            if (previous == null && stripe.bytes + weight > stripe.maxBytes
+                    && !stripe.admit(hash, weight, weigher)) {
+                rejections.increment();
+                return;
+            }
+            stripe.entries.put(key, value);
+            if (previous != null) {
+                stripe.bytes -= weigher.applyAsLong(previous) + ENTRY_OVERHEAD;
+            }
+            stripe.bytes += weight;
+            Iterator<Map.Entry<K, V>> eldest = stripe.entries.entrySet().iterator();
+            while (stripe.bytes > stripe.maxBytes && eldest.hasNext()) {
+                stripe.bytes -= weigher.applyAsLong(eldest.next().getValue()) + ENTRY_OVERHEAD;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public String toString() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return String.format("%s cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d rejected, %d entries,"
+                + " %.1f of %.1f MB", name, hits, lookups - hits, lookups == 0 ? 0.0 : hits * 100.0 / lookups,
+                getEvictions(), getRejections(), size(), getBytes() / 1048576.0, maxBytes / 1048576.0);
+    }
+
+    private static final class Stripe<K, V> {
+        private final long maxBytes;
+        private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private long bytes = 0;
+
+        Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.sketch = new FrequencySketch(maxBytes / BYTES_PER_COUNTER);
+        }
+
+        // whether the entries that would make room, least recent first, are all asked for less often
+        boolean admit(int hash, long weight, ToLongFunction<V> weigher) {
+            int frequency = sketch.frequency(hash);
+            long freed = 0;
+            for (Map.Entry<K, V> entry : entries.entrySet()) {
+                if (bytes - freed + weight <= maxBytes) {
+                    return true;
+                }
+                if (sketch.frequency(LruCache.hash(entry.getKey())) >= frequency) {
+                    return false;
+                }
+                freed += weigher.applyAsLong(entry.getValue()) + ENTRY_OVERHEAD;
+            }
+            return true;
+        }
+    }
+
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97CB3127, 0xB5AD4ECE, 0xC6A4A793, 0x8A4F1C55 };
+
+        // sixteen 4-bit counters per long
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(long counters) {
+            int size = (int) Long.highestOneBit(Math.max(256, Math.min(1 << 24, counters)));
+            table = new long[size / 16];
+            counterMask = size - 1;
+            sampleSize = 10 * size;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int counter = counterOf(hash, i);
+                int shift = (counter & 15) << 2;
+                if (((table[counter >>> 4] >>> shift) & 15) != 15) {
+                    table[counter >>> 4] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int counter = counterOf(hash, i);
+                frequency = Math.min(frequency, (int) (table[counter >>> 4] >>> ((counter & 15) << 2)) & 15);
+            }
+            return frequency;
+        }
+
+        private int counterOf(int hash, int row) {
+            int mixed = (hash + SEEDS[row]) * SEEDS[row];
+            return (mixed ^ (mixed >>> 15)) & counterMask;
+        }
+    }
+}
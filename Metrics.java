@@ -0,0 +1,386 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Phase timers, counters and latency histograms for indexing and query runs. Nothing is measured unless
+ * a program is started with --metrics=<file>: every probe first reads the static enabled flag, so a
+ * disabled probe costs a load and a branch and never calls System.nanoTime. When enabled, the totals are
+ * written at the end of the run as JSON if the file name ends in .json and as Prometheus text otherwise.
+ * The same figures go to JDK Flight Recorder when a recording is running (for example with
+ * -XX:StartFlightRecording=filename=run.jfr): a searchengine.Phase event for each whole-run phase, a
+ * searchengine.Query event for each query and a searchengine.PhaseSummary event per timer at the end.
+ * Timers are cumulative across threads, so the seconds of a phase run by several workers can exceed the
+ * wall time of the run.
+ */
+public class Metrics {
+
+    static final String METRICS_OPTION = "--metrics=";
+    static final String PREFIX = "searchengine_";
+
+    // bucket upper bounds in seconds, 50 microseconds doubling to about 13 seconds
+    private static final double[] BUCKETS = new double[19];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKETS[i] = 0.00005 * (1L << i);
+        }
+    }
+
+    static boolean enabled = false;
+
+    private static final List<Timer> timers = new CopyOnWriteArrayList<>();
+    private static final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private static final List<Histogram> histograms = new CopyOnWriteArrayList<>();
+
+    // reads --metrics=<file> and turns the probes on if it is there; call before any worker thread starts
+    public static String enable(String[] args) {
+        String metricsFile = BatchRunner.optionValue(args, METRICS_OPTION);
+        enabled = metricsFile != null;
+        return metricsFile;
+    }
+
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static Timer timer(String phase) {
+        Timer timer = new Timer(phase);
+        timers.add(timer);
+        return timer;
+    }
+
+    public static Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help);
+        counters.add(counter);
+        return counter;
+    }
+
+    public static Histogram histogram(String name, String labelName, String labelValue, String help) {
+        Histogram histogram = new Histogram(name, labelName, labelValue, help);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    public static void queryEvent(String mode, int topic, long elapsed, long postings, long candidates,
+            int results) {
+        if (!enabled) {
+            return;
+        }
+        QueryEvent event = new QueryEvent();
+        if (event.shouldCommit()) {
+            event.mode = mode;
+            event.topic = topic;
+            event.elapsed = elapsed;
+            event.postings = postings;
+            event.candidates = candidates;
+            event.results = results;
+            event.commit();
+        }
+    }
+
+    public static void write(String metricsFile) {
+        if (metricsFile == null) {
+            return;
+        }
+        for (Timer timer : timers) {
+            PhaseSummaryEvent event = new PhaseSummaryEvent();
+            if (event.shouldCommit()) {
+                event.phase = timer.phase;
+                event.calls = timer.calls.sum();
+                event.total = timer.nanos.sum();
+                event.commit();
+            }
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(metricsFile))) {
+            writer.write(metricsFile.endsWith(".json") ? toJson() : toPrometheus());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP ").append(PREFIX).append("phase_seconds_total Time spent in each phase\n");
+        out.append("# TYPE ").append(PREFIX).append("phase_seconds_total counter\n");
+        for (Timer timer : usedTimers()) {
+            out.append(PREFIX).append("phase_seconds_total{phase=\"").append(timer.phase).append("\"} ")
+                    .append(seconds(timer.nanos.sum())).append('\n');
+        }
+        out.append("# HELP ").append(PREFIX).append("phase_calls_total Times each phase ran\n");
+        out.append("# TYPE ").append(PREFIX).append("phase_calls_total counter\n");
+        for (Timer timer : usedTimers()) {
+            out.append(PREFIX).append("phase_calls_total{phase=\"").append(timer.phase).append("\"} ")
+                    .append(timer.calls.sum()).append('\n');
+        }
+        for (Counter counter : counters) {
+            out.append("# HELP ").append(PREFIX).append(counter.name).append("_total ").append(counter.help)
+                    .append('\n');
+            out.append("# TYPE ").append(PREFIX).append(counter.name).append("_total counter\n");
+            out.append(PREFIX).append(counter.name).append("_total ").append(counter.sum()).append('\n');
+        }
+        // the series of one histogram family have to be adjacent
+        List<Histogram> sorted = usedHistograms();
+        sorted.sort(Comparator.comparing(histogram -> histogram.name));
+        String family = null;
+        for (Histogram histogram : sorted) {
+            String name = PREFIX + histogram.name + "_seconds";
+            if (!name.equals(family)) {
+                out.append("# HELP ").append(name).append(' ').append(histogram.help).append('\n');
+                out.append("# TYPE ").append(name).append(" histogram\n");
+                family = name;
+            }
+            String label = histogram.labelName + "=\"" + histogram.labelValue + "\"";
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                out.append(name).append("_bucket{").append(label).append(",le=\"")
+                        .append(i < BUCKETS.length ? seconds(BUCKETS[i]) : "+Inf").append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{").append(label).append("} ")
+                    .append(seconds(histogram.nanos.sum())).append('\n');
+            out.append(name).append("_count{").append(label).append("} ").append(histogram.count()).append('\n');
+        }
+        return out.toString();
+    }
+
+    public static String toJson() {
+        StringBuilder out = new StringBuilder("{\n  \"phases\": {");
+        List<Timer> usedTimers = usedTimers();
+        for (int i = 0; i < usedTimers.size(); i++) {
+            Timer timer = usedTimers.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("    \"").append(timer.phase).append("\": {\"seconds\": ")
+                    .append(seconds(timer.nanos.sum())).append(", \"calls\": ").append(timer.calls.sum())
+                    .append('}');
+        }
+        out.append("\n  },\n  \"counters\": {");
+        for (int i = 0; i < counters.size(); i++) {
+            Counter counter = counters.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("    \"").append(counter.name).append("\": ")
+                    .append(counter.sum());
+        }
+        out.append("\n  },\n  \"histograms\": {");
+        List<Histogram> usedHistograms = usedHistograms();
+        for (int i = 0; i < usedHistograms.size(); i++) {
+            Histogram histogram = usedHistograms.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("    \"").append(histogram.name).append('{')
+                    .append(histogram.labelName).append('=').append(histogram.labelValue).append("}\": {\"count\": ")
+                    .append(histogram.count()).append(", \"sum_seconds\": ").append(seconds(histogram.nanos.sum()))
+                    .append(", \"p50_seconds\": ").append(seconds(histogram.quantile(0.50)))
+                    .append(", \"p95_seconds\": ").append(seconds(histogram.quantile(0.95)))
+                    .append(", \"p99_seconds\": ").append(seconds(histogram.quantile(0.99)))
+                    .append(", \"buckets\": [");
+            for (int bucket = 0; bucket <= BUCKETS.length; bucket++) {
+                out.append(bucket == 0 ? "" : ", ").append("{\"le\": ")
+                        .append(bucket < BUCKETS.length ? seconds(BUCKETS[bucket]) : "\"+Inf\"")
+                        .append(", \"count\": ").append(histogram.buckets[bucket].sum()).append('}');
+            }
+            out.append("]}");
+        }
+        return out.append("\n  }\n}\n").toString();
+    }
+
+    // timers and histograms of classes a program loads but never runs are left out of its file
+    private static List<Timer> usedTimers() {
+        List<Timer> used = new ArrayList<>();
+        for (Timer timer : timers) {
+            if (timer.calls.sum() > 0) {
+                used.add(timer);
+            }
+        }
+        return used;
+    }
+
+    private static List<Histogram> usedHistograms() {
+        List<Histogram> used = new ArrayList<>();
+        for (Histogram histogram : histograms) {
+            if (histogram.count() > 0) {
+                used.add(histogram);
+            }
+        }
+        return used;
+    }
+
+    private static String seconds(long nanos) {
+        return seconds(nanos / 1e9);
+    }
+
+    private static String seconds(double seconds) {
+        return Double.toString(seconds);
+    }
+
+    public static class Timer {
+        private final String phase;
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+
+        private Timer(String phase) {
+            this.phase = phase;
+        }
+
+        public void stop(long start) {
+            if (enabled) {
+                nanos.add(System.nanoTime() - start);
+                calls.increment();
+            }
+        }
+
+        // for phases that run once or a few times a run, also recorded as a Flight Recorder event
+        public void stopPhase(long start) {
+            if (enabled) {
+                long elapsed = System.nanoTime() - start;
+                nanos.add(elapsed);
+                calls.increment();
+                PhaseEvent event = new PhaseEvent();
+                if (event.shouldCommit()) {
+                    event.phase = phase;
+                    event.elapsed = elapsed;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    public static class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void add(long amount) {
+            if (enabled) {
+                value.add(amount);
+            }
+        }
+
+        public long sum() {
+            return value.sum();
+        }
+    }
+
+    public static class Histogram {
+        private final String name;
+        private final String labelName;
+        private final String labelValue;
+        private final String help;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder nanos = new LongAdder();
+
+        private Histogram(String name, String labelName, String labelValue, String help) {
+            this.name = name;
+            this.labelName = labelName;
+            this.labelValue = labelValue;
+            this.help = help;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long elapsedNanos) {
+            if (!enabled) {
+                return;
+            }
+            double seconds = elapsedNanos / 1e9;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            nanos.add(elapsedNanos);
+        }
+
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        // the upper bound of the bucket holding the quantile, in nanoseconds
+        public long quantile(double fraction) {
+            long count = count();
+            long rank = Math.max(1, (long) Math.ceil(count * fraction));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets[i].sum();
+                if (cumulative >= rank) {
+                    return (long) (BUCKETS[i] * 1e9);
+                }
+            }
+            return count == 0 ? 0 : Long.MAX_VALUE;
+        }
+    }
+
+    @Name("searchengine.Phase")
+    @Label("Search Engine Phase")
+    @Category("Search Engine")
+    @Description("One run of an indexing or query phase")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("searchengine.PhaseSummary")
+    @Label("Search Engine Phase Summary")
+    @Category("Search Engine")
+    @Description("Total time and calls of a phase over the whole run")
+    static class PhaseSummaryEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Calls")
+        long calls;
+
+        @Label("Total")
+        @Timespan(Timespan.NANOSECONDS)
+        long total;
+    }
+
+    @Name("searchengine.Query")
+    @Label("Search Engine Query")
+    @Category("Search Engine")
+    @Description("One query of a batch")
+    static class QueryEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Topic")
+        int topic;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Postings")
+        @Description("Postings scored, or -1 where the mode does not count them per query")
+        long postings;
+
+        @Label("Candidates")
+        @Description("Documents scored, or for Boolean queries the planner's estimate; -1 if not counted")
+        long candidates;
+
+        @Label("Results")
+        int results;
+    }
+}
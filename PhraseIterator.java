@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/*
+ * Streams the documents of one segment that contain a phrase, with slop k letting consecutive terms be
+ * up to k extra positions apart, in order. The rarest term leads and the other terms' cursors advance to
+ * its docids, skipping whole blocks, so only the blocks around candidates are decoded. When every term is
+ * in a candidate, its positions are read from the offset positions-blocks.bin gives the candidate's block,
+ * past the positions of the postings before it in the block. A segment without positions re-tokenizes the
+ * candidates from the document store instead, which finds the same matches far more slowly.
+ */
+public class PhraseIterator implements DocIdIterator {
+
+    private final BlockMaxPostings.Cursor[] cursors;
+    private final BlockMaxPostings.Cursor lead;
+    private final PositionsReader positions;
+    private final int[] firstBlocks;
+    private final long[][] blockStarts;
+    private final PositionsReader.Cursor[] positionCursors;
+    private final int[] positionBlocks;
+    private final int[] positionIndexes;
+    private final int[][] termPositions;
+    private final int[] counts;
+    private final DocumentStore documents;
+    private final List<String> terms;
+    private final Analyzer analyzer;
+    private final int slop;
+    private int frequency;
+
+    public PhraseIterator(BlockMaxPostings postings, PositionsReader positions, DocumentStore documents,
+            int[] termIds, List<String> terms, int slop, Analyzer analyzer) {
+        int termCount = termIds.length;
+        this.positions = positions;
+        this.documents = documents;
+        this.terms = terms;
+        this.slop = slop;
+        this.analyzer = analyzer;
+        cursors = new BlockMaxPostings.Cursor[termCount];
+        BlockMaxPostings.Cursor rarest = null;
+        for (int k = 0; k < termCount; k++) {
+            cursors[k] = postings.open(termIds[k]);
+            if (rarest == null || cursors[k].getDf() < rarest.getDf()) {
+                rarest = cursors[k];
+            }
+        }
+        lead = rarest;
+        termPositions = new int[termCount][];
+        counts = new int[termCount];
+
+        firstBlocks = new int[termCount];
+        positionCursors = new PositionsReader.Cursor[termCount];
+        positionBlocks = new int[termCount];
+        positionIndexes = new int[termCount];
+        blockStarts = positions == null || positions.hasBlockOffsets() ? null : new long[termCount][];
+        if (positions != null) {
+            for (int k = 0; k < termCount; k++) {
+                firstBlocks[k] = postings.getFirstBlock(termIds[k]);
+                positionCursors[k] = positions.open(termIds[k]);
+                positionBlocks[k] = -1;
+                termPositions[k] = new int[16];
+                if (blockStarts != null) {
+                    blockStarts[k] = blockStarts(postings, positions, termIds[k]);
+                }
+            }
+        }
+        findMatch();
+    }
+
+    // segments written before positions-blocks.bin: walk the term's positions once to find each block's start
+    private static long[] blockStarts(BlockMaxPostings postings, PositionsReader positions, int termId) {
+        BlockMaxPostings.Cursor cursor = postings.open(termId);
+        PositionsReader.Cursor reader = positions.open(termId);
+        long[] starts = new long[cursor.getBlockCount()];
+        int block = -1;
+        for (; cursor.docId() != END; cursor.next()) {
+            if (cursor.blockIndex() != block) {
+                block = cursor.blockIndex();
+                starts[block] = reader.getOffset();
+            }
+            reader.skip(cursor.tf());
+        }
+        return starts;
+    }
+
+    @Override
+    public int docId() {
+        return lead.docId();
+    }
+
+    // the number of times the phrase occurs in the current document
+    public int frequency() {
+        return frequency;
+    }
+
+    @Override
+    public void next() {
+        lead.next();
+        findMatch();
+    }
+
+    @Override
+    public void advance(int target) {
+        if (lead.docId() >= target) {
+            return;
+        }
+        lead.advance(target);
+        findMatch();
+    }
+
+    private void findMatch() {
+        int candidate = lead.docId();
+        while (candidate != END) {
+            int next = candidate;
+            for (BlockMaxPostings.Cursor cursor : cursors) {
+                if (cursor == lead) {
+                    continue;
+                }
+                cursor.advance(candidate);
+                if (cursor.docId() != candidate) {
+                    next = cursor.docId();
+                    break;
+                }
+            }
+            if (next == candidate) {
+                frequency = countMatches(candidate);
+                if (frequency > 0) {
+                    return;
+                }
+                next = candidate + 1;
+            }
+            if (next == END) {
+                lead.advance(END);
+                return;
+            }
+            lead.advance(next);
+            candidate = lead.docId();
+        }
+    }
+
+    private int countMatches(int docId) {
+        if (positions == null) {
+            retokenize(docId);
+        } else {
+            for (int k = 0; k < cursors.length; k++) {
+                readPositions(k);
+            }
+        }
+        return countPhraseMatches(termPositions, counts, slop);
+    }
+
+    private void readPositions(int k) {
+        BlockMaxPostings.Cursor cursor = cursors[k];
+        int block = cursor.blockIndex();
+        int index = cursor.indexInBlock();
+        if (positionBlocks[k] != block) {
+            positionCursors[k].seek(blockStarts == null ? positions.getBlockOffset(firstBlocks[k] + block)
+                    : blockStarts[k][block]);
+            positionBlocks[k] = block;
+            positionIndexes[k] = 0;
+        }
+        int skipped = 0;
+        while (positionIndexes[k] < index) {
+            skipped += cursor.blockTf(positionIndexes[k]++);
+        }
+        positionCursors[k].skip(skipped);
+        int tf = cursor.tf();
+        if (tf > termPositions[k].length) {
+            termPositions[k] = new int[Math.max(tf, termPositions[k].length * 2)];
+        }
+        positionCursors[k].read(tf, termPositions[k]);
+        positionIndexes[k] = index + 1;
+        counts[k] = tf;
+    }
+
+    private void retokenize(int docId) {
+        String record;
+        try {
+            record = documents.getDocument(docId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String raw = record.substring(record.indexOf("raw document:\n") + "raw document:\n".length());
+        List<String> tokens = new TrecDocument(raw.toCharArray()).tokenize(analyzer);
+        for (int k = 0; k < terms.size(); k++) {
+            termPositions[k] = new int[tokens.size()];
+            counts[k] = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.get(i).equals(terms.get(k))) {
+                    termPositions[k][counts[k]++] = i;
+                }
+            }
+        }
+    }
+
+    public static int countPhraseMatches(int[][] positions, int[] counts, int slop) {
+        int terms = positions.length;
+        int[] next = new int[terms];
+        int matches = 0;
+        for (int first = 0; first < counts[0]; first++) {
+            int previous = positions[0][first];
+            boolean matched = true;
+            for (int k = 1; k < terms && matched; k++) {
+                while (next[k] < counts[k] && positions[k][next[k]] <= previous) {
+                    next[k]++;
+                }
+                if (next[k] == counts[k]) {
+                    return matches;
+                }
+                int position = positions[k][next[k]];
+                matched = position <= previous + 1 + slop;
+                previous = position;
+            }
+            if (matched) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Answers every query line as one phrase and ranks the matching documents by how often the phrase occurs,
+ * then by docid. The matches come from the PhraseIterator that BooleanSearch uses for quoted phrases.
+ */
+public class PhraseSearch {
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Please input: java PhraseSearch <index-directory> <queries-file> <output-file-name> <Stem/No> [slop]");
+            return;
+        }
+
+        String indexDir = args[0];
+        String queriesFile = args[1];
+        String outputFile = args[2];
+        boolean stem = args[3].equalsIgnoreCase("Stem");
+        int slop = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        SegmentedIndex index;
+        Segment[] segments;
+        try {
+            index = new SegmentedIndex(indexDir);
+            segments = openSegments(index);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        stem = index.getAnalyzer(stem).isStemming();
+
+        Map<Integer, List<String>> queryMap = BM25.readQueryTokens(queriesFile, stem);
+        long start = System.nanoTime();
+        String outputText = processQueries(queryMap, index, segments, slop, stem);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Answered " + queryMap.size() + " phrase queries in " + elapsed / 1000000 + " ms");
+        saveOutput(outputText, outputFile);
+    }
+
+    public static Segment[] openSegments(SegmentedIndex index) throws IOException {
+        Segment[] segments = new Segment[index.getSegmentCount()];
+        DocLengths docLengths = index.openDocLengths();
+        for (int segment = 0; segment < segments.length; segment++) {
+            segments[segment] = new Segment(index, segment, docLengths);
+        }
+        return segments;
+    }
+
+    public static String processQueries(Map<Integer, List<String>> queryMap, SegmentedIndex index,
+            Segment[] segments, int slop, boolean stem) {
+        StringBuilder outputText = new StringBuilder();
+        ArrayList<Integer> keys = new ArrayList<>(queryMap.keySet());
+        Collections.sort(keys);
+        for (Integer queryId : keys) {
+            List<String> terms = queryMap.get(queryId);
+            List<int[]> matches = new ArrayList<>();
+            if (!terms.isEmpty()) {
+                for (Segment segment : segments) {
+                    segment.match(terms, slop, stem, matches);
+                }
+            }
+            matches.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+            for (int rank = 1; rank <= Math.min(1000, matches.size()); rank++) {
+                int[] match = matches.get(rank - 1);
+                outputText.append(queryId).append(" Q0 ").append(index.getDocNo(match[0])).append(' ')
+                        .append(rank).append(' ').append(match[1]).append(" a7bhanjiPHRASE\n");
+            }
+        }
+        return outputText.toString();
+    }
+
+    public static void saveOutput(String outputText, String outputFile) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write(outputText);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static class Segment {
+        private final TermDictionary dictionary;
+        private final int docBase;
+        private final BlockMaxPostings postings;
+        private final PositionsReader positions;
+        private final DocumentStore documents;
+
+        Segment(SegmentedIndex index, int segment, DocLengths docLengths) throws IOException {
+            String segmentDir = index.getSegmentDir(segment);
+            dictionary = index.getDictionary(segment);
+            docBase = index.getDocBase(segment);
+            postings = new BlockMaxPostings(segmentDir, docLengths, docBase);
+            positions = PositionsReader.exists(segmentDir) ? new PositionsReader(segmentDir) : null;
+            documents = positions == null ? new DocumentStore(segmentDir) : null;
+        }
+
+        void match(List<String> terms, int slop, boolean stem, List<int[]> matches) {
+            int[] termIds = new int[terms.size()];
+            for (int k = 0; k < termIds.length; k++) {
+                termIds[k] = dictionary.getTermId(terms.get(k));
+                if (termIds[k] < 0) {
+                    return;
+                }
+            }
+            PhraseIterator phrase = new PhraseIterator(postings, positions, documents, termIds, terms, slop,
+                    Analyzer.get(stem));
+            for (int docId = phrase.docId(); docId != DocIdIterator.END; phrase.next(), docId = phrase.docId()) {
+                matches.add(new int[] { docBase + docId, phrase.frequency() });
+            }
+        }
+    }
+}
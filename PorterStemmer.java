@@ -0,0 +1,361 @@
+/*
+ * Martin Porter's suffix-stripping algorithm ("An algorithm for suffix stripping", Program 14(3), 1980),
+ * following the steps of his reference implementation. Words are expected in lower case; words of one or
+ * two letters are returned unchanged.
+ */
+public class PorterStemmer {
+
+    private final char[] b;
+    private int j;
+    private int k;
+
+    private PorterStemmer(char[] word, int length) {
+        b = word;
+        k = length - 1;
+    }
+
+    public static String stem(String word) {
+        char[] chars = word.toCharArray();
+        return new String(chars, 0, stem(chars, chars.length));
+    }
+
+    // stems word[0, length) in place and returns the stem's length; no step puts back more than it removed
+    public static int stem(char[] word, int length) {
+        if (length <= 2) {
+            return length;
+        }
+        PorterStemmer stemmer = new PorterStemmer(word, length);
+        stemmer.step1();
+        stemmer.step2();
+        stemmer.step3();
+        stemmer.step4();
+        stemmer.step5();
+        stemmer.step6();
+        return stemmer.k + 1;
+    }
+
+    private boolean isConsonant(int i) {
+        switch (b[i]) {
+            case 'a':
+            case 'e':
+            case 'i':
+            case 'o':
+            case 'u':
+                return false;
+            case 'y':
+                return i == 0 || !isConsonant(i - 1);
+            default:
+                return true;
+        }
+    }
+
+    // the number of vowel-consonant sequences between the start of the word and j
+    private int measure() {
+        int n = 0;
+        int i = 0;
+        while (true) {
+            if (i > j) {
+                return n;
+            }
+            if (!isConsonant(i)) {
+                break;
+            }
+            i++;
+        }
+        i++;
+        while (true) {
+            while (true) {
+                if (i > j) {
+                    return n;
+                }
+                if (isConsonant(i)) {
+                    break;
+                }
+                i++;
+            }
+            i++;
+            n++;
+            while (true) {
+                if (i > j) {
+                    return n;
+                }
+                if (!isConsonant(i)) {
+                    break;
+                }
+                i++;
+            }
+            i++;
+        }
+    }
+
+    private boolean vowelInStem() {
+        for (int i = 0; i <= j; i++) {
+            if (!isConsonant(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean doubleConsonant(int i) {
+        return i >= 1 && b[i] == b[i - 1] && isConsonant(i);
+    }
+
+    // consonant-vowel-consonant ending at i, where the last consonant is not w, x or y
+    private boolean cvc(int i) {
+        if (i < 2 || !isConsonant(i) || isConsonant(i - 1) || !isConsonant(i - 2)) {
+            return false;
+        }
+        char c = b[i];
+        return c != 'w' && c != 'x' && c != 'y';
+    }
+
+    private boolean ends(String suffix) {
+        int length = suffix.length();
+        int offset = k - length + 1;
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (b[offset + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        j = k - length;
+        return true;
+    }
+
+    private void setTo(String suffix) {
+        int length = suffix.length();
+        int offset = j + 1;
+        for (int i = 0; i < length; i++) {
+            b[offset + i] = suffix.charAt(i);
+        }
+        k = j + length;
+    }
+
+    private void replace(String suffix) {
+        if (measure() > 0) {
+            setTo(suffix);
+        }
+    }
+
+    // plurals and -ed or -ing
+    private void step1() {
+        if (b[k] == 's') {
+            if (ends("sses")) {
+                k -= 2;
+            } else if (ends("ies")) {
+                setTo("i");
+            } else if (b[k - 1] != 's') {
+                k--;
+            }
+        }
+        if (ends("eed")) {
+            if (measure() > 0) {
+                k--;
+            }
+        } else if ((ends("ed") || ends("ing")) && vowelInStem()) {
+            k = j;
+            if (ends("at")) {
+                setTo("ate");
+            } else if (ends("bl")) {
+                setTo("ble");
+            } else if (ends("iz")) {
+                setTo("ize");
+            } else if (doubleConsonant(k)) {
+                k--;
+                char c = b[k];
+                if (c == 'l' || c == 's' || c == 'z') {
+                    k++;
+                }
+            } else if (measure() == 1 && cvc(k)) {
+                setTo("e");
+            }
+        }
+    }
+
+    // terminal y to i when there is another vowel in the stem
+    private void step2() {
+        if (ends("y") && vowelInStem()) {
+            b[k] = 'i';
+        }
+    }
+
+    // double suffixes to single ones
+    private void step3() {
+        if (k == 0) {
+            return;
+        }
+        switch (b[k - 1]) {
+            case 'a':
+                if (ends("ational")) {
+                    replace("ate");
+                } else if (ends("tional")) {
+                    replace("tion");
+                }
+                break;
+            case 'c':
+                if (ends("enci")) {
+                    replace("ence");
+                } else if (ends("anci")) {
+                    replace("ance");
+                }
+                break;
+            case 'e':
+                if (ends("izer")) {
+                    replace("ize");
+                }
+                break;
+            case 'l':
+                if (ends("bli")) {
+                    replace("ble");
+                } else if (ends("alli")) {
+                    replace("al");
+                } else if (ends("entli")) {
+                    replace("ent");
+                } else if (ends("eli")) {
+                    replace("e");
+                } else if (ends("ousli")) {
+                    replace("ous");
+                }
+                break;
+            case 'o':
+                if (ends("ization")) {
+                    replace("ize");
+                } else if (ends("ation")) {
+                    replace("ate");
+                } else if (ends("ator")) {
+                    replace("ate");
+                }
+                break;
+            case 's':
+                if (ends("alism")) {
+                    replace("al");
+                } else if (ends("iveness")) {
+                    replace("ive");
+                } else if (ends("fulness")) {
+                    replace("ful");
+                } else if (ends("ousness")) {
+                    replace("ous");
+                }
+                break;
+            case 't':
+                if (ends("aliti")) {
+                    replace("al");
+                } else if (ends("iviti")) {
+                    replace("ive");
+                } else if (ends("biliti")) {
+                    replace("ble");
+                }
+                break;
+            case 'g':
+                if (ends("logi")) {
+                    replace("log");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // -ic-, -full, -ness and similar
+    private void step4() {
+        switch (b[k]) {
+            case 'e':
+                if (ends("icate")) {
+                    replace("ic");
+                } else if (ends("ative")) {
+                    replace("");
+                } else if (ends("alize")) {
+                    replace("al");
+                }
+                break;
+            case 'i':
+                if (ends("iciti")) {
+                    replace("ic");
+                }
+                break;
+            case 'l':
+                if (ends("ical")) {
+                    replace("ic");
+                } else if (ends("ful")) {
+                    replace("");
+                }
+                break;
+            case 's':
+                if (ends("ness")) {
+                    replace("");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // -ant, -ence and similar when the stem has a measure above one
+    private void step5() {
+        if (k == 0) {
+            return;
+        }
+        boolean found;
+        switch (b[k - 1]) {
+            case 'a':
+                found = ends("al");
+                break;
+            case 'c':
+                found = ends("ance") || ends("ence");
+                break;
+            case 'e':
+                found = ends("er");
+                break;
+            case 'i':
+                found = ends("ic");
+                break;
+            case 'l':
+                found = ends("able") || ends("ible");
+                break;
+            case 'n':
+                found = ends("ant") || ends("ement") || ends("ment") || ends("ent");
+                break;
+            case 'o':
+                found = ends("ion") && j >= 0 && (b[j] == 's' || b[j] == 't') || ends("ou");
+                break;
+            case 's':
+                found = ends("ism");
+                break;
+            case 't':
+                found = ends("ate") || ends("iti");
+                break;
+            case 'u':
+                found = ends("ous");
+                break;
+            case 'v':
+                found = ends("ive");
+                break;
+            case 'z':
+                found = ends("ize");
+                break;
+            default:
+                found = false;
+                break;
+        }
+        if (found && measure() > 1) {
+            k = j;
+        }
+    }
+
+    // a final -e, and -ll to -l, when the measure allows
+    private void step6() {
+        j = k;
+        if (b[k] == 'e') {
+            int m = measure();
+            if (m > 1 || m == 1 && !cvc(k - 1)) {
+                k--;
+            }
+        }
+        if (b[k] == 'l' && doubleConsonant(k) && measure() > 1) {
+            k--;
+        }
+    }
+}
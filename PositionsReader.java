@@ -0,0 +1,101 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+
+/*
+ * positions.bin is written next to postings.bin when an index is built with positions. For every term in
+ * termId order and every posting in docid order it holds tf varint gaps between the term's token positions
+ * in that document, the first gap counted from zero. positions-offsets.bin is an int term count followed by
+ * the long offset of every termId's first position. Postings supply the tfs needed to walk the lists.
+ * positions-blocks.bin has a long per postings block, in the order of postings-blocks.bin, giving the offset
+ * of the block's first position, so a phrase can reach the positions of a posting without walking the
+ * blocks before it. Segments written before the file existed are walked from the term's first position.
+ */
+public class PositionsReader {
+
+    static final String POSITIONS_FILE = "positions.bin";
+    static final String OFFSETS_FILE = "positions-offsets.bin";
+    static final String BLOCKS_FILE = "positions-blocks.bin";
+
+    private final MappedByteBuffer positions;
+    private final long[] offsets;
+    private final MappedByteBuffer blocks;
+
+    public PositionsReader(String indexDir) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(indexDir, POSITIONS_FILE))) {
+            positions = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try (DataInputStream offsetsIn = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(indexDir + "/" + OFFSETS_FILE)))) {
+            offsets = new long[offsetsIn.readInt()];
+            for (int termId = 0; termId < offsets.length; termId++) {
+                offsets[termId] = offsetsIn.readLong();
+            }
+        }
+        if (new File(indexDir, BLOCKS_FILE).exists()) {
+            blocks = PostingsCodec.map(indexDir, BLOCKS_FILE);
+        } else {
+            blocks = null;
+        }
+    }
+
+    public static boolean exists(String indexDir) {
+        return new File(indexDir, POSITIONS_FILE).exists();
+    }
+
+    public Cursor open(int termId) {
+        return new Cursor(offsets[termId]);
+    }
+
+    public boolean hasBlockOffsets() {
+        return blocks != null;
+    }
+
+    public long getBlockOffset(int block) {
+        return blocks.getLong(block * 8);
+    }
+
+    public class Cursor {
+        private int position;
+
+        Cursor(long offset) {
+            position = (int) offset;
+        }
+
+        public long getOffset() {
+            return position;
+        }
+
+        public void seek(long offset) {
+            position = (int) offset;
+        }
+
+        public void skip(int tf) {
+            int skipped = 0;
+            while (skipped < tf) {
+                if (positions.get(position++) >= 0) {
+                    skipped++;
+                }
+            }
+        }
+
+        public void read(int tf, int[] out) {
+            int value = 0;
+            for (int i = 0; i < tf; i++) {
+                byte b = positions.get(position++);
+                int gap = b & 0x7F;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = positions.get(position++);
+                    gap |= (b & 0x7F) << shift;
+                }
+                value += gap;
+                out[i] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+public class PostingsBuffer {
+
+    private static final int ARRAY_HEADER_BYTES = 16;
+    // the postings reference, the length and the touched-terms entry of a term in the current run
+    private static final int TERM_SLOT_BYTES = 16;
+
+    private int[][] postings = new int[1024][];
+    private int[] lengths = new int[1024];
+    private int termCount = 0;
+    private long estimatedBytes = 0;
+    private int[] touchedTerms = new int[1024];
+    private int touchedCount = 0;
+
+    private int[] termCounts = new int[1024];
+    private int[] docTerms = new int[256];
+
+    private final boolean positional;
+    private int[][] positions;
+    private int[] positionLengths;
+
+    public PostingsBuffer() {
+        this(false);
+    }
+
+    public PostingsBuffer(boolean positional) {
+        this.positional = positional;
+        if (positional) {
+            positions = new int[1024][];
+            positionLengths = new int[1024];
+        }
+    }
+
+    public void addDocument(int docId, int[] termIds, int length) {
+        int uniqueTerms = 0;
+        for (int i = 0; i < length; i++) {
+            int termId = termIds[i];
+            if (termId >= termCounts.length) {
+                termCounts = Arrays.copyOf(termCounts, Math.max(termCounts.length * 2, termId + 1));
+            }
+            if (termCounts[termId]++ == 0) {
+                if (uniqueTerms == docTerms.length) {
+                    docTerms = Arrays.copyOf(docTerms, docTerms.length * 2);
+                }
+                docTerms[uniqueTerms++] = termId;
+            }
+        }
+
+        for (int i = 0; i < uniqueTerms; i++) {
+            int termId = docTerms[i];
+            addPosting(termId, docId, termCounts[termId]);
+            termCounts[termId] = 0;
+        }
+
+        if (positional) {
+            for (int i = 0; i < length; i++) {
+                addPosition(termIds[i], i);
+            }
+        }
+    }
+
+    private void addPosition(int termId, int position) {
+        if (termId >= positions.length) {
+            int capacity = Math.max(positions.length * 2, termId + 1);
+            positions = Arrays.copyOf(positions, capacity);
+            positionLengths = Arrays.copyOf(positionLengths, capacity);
+        }
+        int[] termPositions = positions[termId];
+        int length = positionLengths[termId];
+        if (termPositions == null) {
+            termPositions = new int[4];
+            positions[termId] = termPositions;
+            estimatedBytes += ARRAY_HEADER_BYTES + 4 * 4 + 12;
+        } else if (length == termPositions.length) {
+            termPositions = Arrays.copyOf(termPositions, length * 2);
+            positions[termId] = termPositions;
+            estimatedBytes += 4L * length;
+        }
+        termPositions[length] = position;
+        positionLengths[termId] = length + 1;
+    }
+
+    public void addPosting(int termId, int docId, int tf) {
+        if (termId >= postings.length) {
+            int capacity = Math.max(postings.length * 2, termId + 1);
+            postings = Arrays.copyOf(postings, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        termCount = Math.max(termCount, termId + 1);
+
+        int[] termPostings = postings[termId];
+        int length = lengths[termId];
+        if (termPostings == null) {
+            termPostings = new int[4];
+            postings[termId] = termPostings;
+            if (touchedCount == touchedTerms.length) {
+                touchedTerms = Arrays.copyOf(touchedTerms, touchedCount * 2);
+            }
+            touchedTerms[touchedCount++] = termId;
+            estimatedBytes += ARRAY_HEADER_BYTES + 4 * 4 + TERM_SLOT_BYTES;
+        } else if (length == termPostings.length) {
+            termPostings = Arrays.copyOf(termPostings, length * 2);
+            postings[termId] = termPostings;
+            estimatedBytes += 4L * length;
+        }
+        termPostings[length] = docId;
+        termPostings[length + 1] = tf;
+        lengths[termId] = length + 2;
+    }
+
+    // only the terms of the current run are reset, so a flush costs the run rather than the vocabulary
+    public void clear() {
+        for (int i = 0; i < touchedCount; i++) {
+            int termId = touchedTerms[i];
+            postings[termId] = null;
+            lengths[termId] = 0;
+            if (positional && termId < positions.length) {
+                positions[termId] = null;
+                positionLengths[termId] = 0;
+            }
+        }
+        touchedCount = 0;
+        termCount = 0;
+        estimatedBytes = 0;
+    }
+
+    // the arrays indexed by termId grow with the vocabulary like the lexicon does and are not charged to a run
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int[] getTermIds() {
+        int[] termIds = Arrays.copyOf(touchedTerms, touchedCount);
+        Arrays.sort(termIds);
+        return termIds;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getDocumentFrequency(int termId) {
+        return lengths[termId] / 2;
+    }
+
+    public int getDocId(int termId, int index) {
+        return postings[termId][index * 2];
+    }
+
+    public int getTermFrequency(int termId, int index) {
+        return postings[termId][index * 2 + 1];
+    }
+
+    public int[] getPositions(int termId) {
+        return positions[termId];
+    }
+}
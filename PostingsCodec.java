@@ -0,0 +1,211 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * postings.bin holds every term's postings back to back in termId order. A term's postings are cut into
+ * blocks of BLOCK_SIZE; each block is the varint docid gaps followed by the varint term frequencies.
+ * postings-offsets.bin is an int term count followed by a fixed (long offset, int df) entry per termId.
+ * postings-blocks.bin has a fixed entry per block, in the same order: int last docid, int encoded byte
+ * length, int max tf and int min document length, which bound the BM25 score of any posting in the block.
+ * postings-bitmaps.bin repeats the docids of every term found in at least one in BITMAP_DENSITY documents
+ * as an int termId followed by a DocIdBitmap, in termId order, so Boolean operators on common terms can
+ * work a machine word at a time.
+ * Query-time readers map postings.bin and postings-blocks.bin rather than copying them onto the heap, so
+ * opening an index reads only the per-term offsets and a query pages in just the lists it decodes.
+ */
+public class PostingsCodec {
+
+    static final int BLOCK_SIZE = 128;
+    static final String POSTINGS_FILE = "postings.bin";
+    static final String OFFSETS_FILE = "postings-offsets.bin";
+    static final String BLOCKS_FILE = "postings-blocks.bin";
+    static final String BITMAPS_FILE = "postings-bitmaps.bin";
+    static final int BITMAP_DENSITY = 16;
+
+    public static void saveInvertedIndex(PostingsBuffer invertedIndex, String folderPath) throws IOException {
+        saveInvertedIndex(invertedIndex, folderPath, null);
+    }
+
+    public static void saveInvertedIndex(PostingsBuffer invertedIndex, String folderPath, List<Integer> docLengths)
+            throws IOException {
+        int termCount = invertedIndex.getTermCount();
+        boolean positional = invertedIndex.isPositional();
+        try (PostingsWriter writer = new PostingsWriter(folderPath, termCount, positional, docLengths)) {
+            for (int termId = 0; termId < termCount; termId++) {
+                int df = invertedIndex.getDocumentFrequency(termId);
+                if (df == 0) {
+                    continue;
+                }
+                writer.startTerm(termId, df);
+                int positionIndex = 0;
+                for (int i = 0; i < df; i++) {
+                    int tf = invertedIndex.getTermFrequency(termId, i);
+                    writer.addPosting(invertedIndex.getDocId(termId, i), tf);
+                    if (positional) {
+                        writer.addPositions(invertedIndex.getPositions(termId), positionIndex, tf);
+                        positionIndex += tf;
+                    }
+                }
+            }
+        }
+    }
+
+    public static Map<Integer, List<List<Integer>>> loadInvertedIndex(String folderPath) {
+        try (DataInputStream offsetsIn = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(folderPath + "/" + OFFSETS_FILE)))) {
+            byte[] postingsBytes = Files.readAllBytes(Paths.get(folderPath, POSTINGS_FILE));
+            int termCount = offsetsIn.readInt();
+            Map<Integer, List<List<Integer>>> invertedIndex = new HashMap<>(termCount * 2);
+            int[] docIds = new int[BLOCK_SIZE];
+            int[] position = new int[1];
+
+            for (int termId = 0; termId < termCount; termId++) {
+                position[0] = (int) offsetsIn.readLong();
+                int df = offsetsIn.readInt();
+                if (df == 0) {
+                    continue;
+                }
+
+                List<List<Integer>> postings = new ArrayList<>(df);
+                int docId = 0;
+                for (int blockStart = 0; blockStart < df; blockStart += BLOCK_SIZE) {
+                    int blockLength = Math.min(BLOCK_SIZE, df - blockStart);
+                    for (int i = 0; i < blockLength; i++) {
+                        docId += readVInt(postingsBytes, position);
+                        docIds[i] = docId;
+                    }
+                    for (int i = 0; i < blockLength; i++) {
+                        List<Integer> posting = new ArrayList<>(2);
+                        posting.add(docIds[i]);
+                        posting.add(readVInt(postingsBytes, position));
+                        postings.add(posting);
+                    }
+                }
+                invertedIndex.put(termId, postings);
+            }
+            return invertedIndex;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public static Map<Integer, DocIdBitmap> loadBitmaps(String folderPath) throws IOException {
+        Map<Integer, DocIdBitmap> bitmaps = new HashMap<>();
+        File bitmapsFile = new File(folderPath, BITMAPS_FILE);
+        if (!bitmapsFile.exists()) {
+            return bitmaps;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bitmapsFile),
+                1 << 16))) {
+            while (true) {
+                int termId;
+                try {
+                    termId = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                bitmaps.put(termId, DocIdBitmap.read(in));
+            }
+        }
+        return bitmaps;
+    }
+
+    public static MappedByteBuffer map(String folderPath, String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(folderPath, fileName))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public static void decodePostings(ByteBuffer postings, long offset, int df, int[] docIds, int[] tfs) {
+        int[] position = { (int) offset };
+        int docId = 0;
+        for (int blockStart = 0; blockStart < df; blockStart += BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, df);
+            for (int i = blockStart; i < blockEnd; i++) {
+                docId += readVInt(postings, position);
+                docIds[i] = docId;
+            }
+            for (int i = blockStart; i < blockEnd; i++) {
+                tfs[i] = readVInt(postings, position);
+            }
+        }
+    }
+
+    static int writeVInt(OutputStream out, int value) throws IOException {
+        int written = 1;
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+            written++;
+        }
+        out.write(value);
+        return written;
+    }
+
+    static int writeVLong(OutputStream out, long value) throws IOException {
+        int written = 1;
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+            written++;
+        }
+        out.write((int) value);
+        return written;
+    }
+
+    static int readVInt(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        int value = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    static int readVInt(byte[] bytes, int[] position) {
+        int pos = position[0];
+        byte b = bytes[pos++];
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = bytes[pos++];
+            value |= (b & 0x7F) << shift;
+        }
+        position[0] = pos;
+        return value;
+    }
+
+    static int readVInt(ByteBuffer bytes, int[] position) {
+        int pos = position[0];
+        byte b = bytes.get(pos++);
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = bytes.get(pos++);
+            value |= (b & 0x7F) << shift;
+        }
+        position[0] = pos;
+        return value;
+    }
+}
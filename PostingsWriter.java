@@ -0,0 +1,179 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public class PostingsWriter implements Closeable {
+
+    private final OutputStream postingsOut;
+    private final DataOutputStream offsetsOut;
+    private final int termCount;
+    private final OutputStream positionsOut;
+    private final DataOutputStream positionOffsetsOut;
+    private final DataOutputStream positionBlocksOut;
+    private long positionsOffset = 0;
+    private long blockPositionsOffset = 0;
+    private final DataOutputStream blocksOut;
+    private final List<Integer> docLengths;
+    private final DataOutputStream bitmapsOut;
+    private int bitmapTermId = -1;
+    private int[] bitmapDocIds = new int[0];
+    private int bitmapLength = 0;
+
+    private final int[] blockDocIds = new int[PostingsCodec.BLOCK_SIZE];
+    private final int[] blockTfs = new int[PostingsCodec.BLOCK_SIZE];
+    private int blockLength = 0;
+
+    private long offset = 0;
+    private int nextTermId = 0;
+    private int previousDocId = 0;
+
+    public PostingsWriter(String folderPath, int termCount) throws IOException {
+        this(folderPath, termCount, false);
+    }
+
+    public PostingsWriter(String folderPath, int termCount, boolean positional) throws IOException {
+        this(folderPath, termCount, positional, null);
+    }
+
+    public PostingsWriter(String folderPath, int termCount, boolean positional, List<Integer> docLengths)
+            throws IOException {
+        File postingsFile = new File(folderPath + "/" + PostingsCodec.POSTINGS_FILE);
+        postingsFile.getParentFile().mkdirs();
+        this.postingsOut = new BufferedOutputStream(new FileOutputStream(postingsFile));
+        this.offsetsOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(folderPath + "/" + PostingsCodec.OFFSETS_FILE)));
+        this.termCount = termCount;
+        offsetsOut.writeInt(termCount);
+        this.blocksOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(folderPath + "/" + PostingsCodec.BLOCKS_FILE)));
+        this.docLengths = docLengths;
+        this.bitmapsOut = docLengths == null ? null : new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(folderPath + "/" + PostingsCodec.BITMAPS_FILE)));
+        if (positional) {
+            this.positionsOut = new BufferedOutputStream(new FileOutputStream(
+                    folderPath + "/" + PositionsReader.POSITIONS_FILE));
+            this.positionOffsetsOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(folderPath + "/" + PositionsReader.OFFSETS_FILE)));
+            positionOffsetsOut.writeInt(termCount);
+            this.positionBlocksOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(folderPath + "/" + PositionsReader.BLOCKS_FILE)));
+        } else {
+            this.positionsOut = null;
+            this.positionOffsetsOut = null;
+            this.positionBlocksOut = null;
+        }
+    }
+
+    public void startTerm(int termId, int df) throws IOException {
+        skipTo(termId);
+        offsetsOut.writeLong(offset);
+        offsetsOut.writeInt(df);
+        if (positionOffsetsOut != null) {
+            positionOffsetsOut.writeLong(positionsOffset);
+        }
+        nextTermId = termId + 1;
+        previousDocId = 0;
+        if (bitmapsOut != null && (long) df * PostingsCodec.BITMAP_DENSITY >= docLengths.size()) {
+            bitmapTermId = termId;
+            if (bitmapDocIds.length < df) {
+                bitmapDocIds = new int[df];
+            }
+        }
+    }
+
+    private void skipTo(int termId) throws IOException {
+        flushBlock();
+        flushBitmap();
+        while (nextTermId < termId) {
+            offsetsOut.writeLong(offset);
+            offsetsOut.writeInt(0);
+            if (positionOffsetsOut != null) {
+                positionOffsetsOut.writeLong(positionsOffset);
+            }
+            nextTermId++;
+        }
+    }
+
+    public void addPosting(int docId, int tf) throws IOException {
+        if (blockLength == 0) {
+            blockPositionsOffset = positionsOffset;
+        }
+        blockDocIds[blockLength] = docId;
+        blockTfs[blockLength] = tf;
+        blockLength++;
+        if (bitmapTermId >= 0) {
+            bitmapDocIds[bitmapLength++] = docId;
+        }
+        if (blockLength == PostingsCodec.BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    public void addPositions(int[] positions, int from, int count) throws IOException {
+        int previousPosition = 0;
+        for (int i = from; i < from + count; i++) {
+            positionsOffset += PostingsCodec.writeVInt(positionsOut, positions[i] - previousPosition);
+            previousPosition = positions[i];
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+        long blockStart = offset;
+        int maxTf = 0;
+        int minDocLength = Integer.MAX_VALUE;
+        for (int i = 0; i < blockLength; i++) {
+            offset += PostingsCodec.writeVInt(postingsOut, blockDocIds[i] - previousDocId);
+            previousDocId = blockDocIds[i];
+            minDocLength = Math.min(minDocLength, docLengths == null ? 0 : docLengths.get(blockDocIds[i]));
+        }
+        for (int i = 0; i < blockLength; i++) {
+            offset += PostingsCodec.writeVInt(postingsOut, blockTfs[i]);
+            maxTf = Math.max(maxTf, blockTfs[i]);
+        }
+        blocksOut.writeInt(previousDocId);
+        blocksOut.writeInt((int) (offset - blockStart));
+        blocksOut.writeInt(maxTf);
+        blocksOut.writeInt(minDocLength);
+        if (positionBlocksOut != null) {
+            positionBlocksOut.writeLong(blockPositionsOffset);
+        }
+        blockLength = 0;
+    }
+
+    private void flushBitmap() throws IOException {
+        if (bitmapTermId < 0) {
+            return;
+        }
+        bitmapsOut.writeInt(bitmapTermId);
+        DocIdBitmap.fromSortedDocIds(bitmapDocIds, bitmapLength).write(bitmapsOut);
+        bitmapTermId = -1;
+        bitmapLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            skipTo(termCount);
+        } finally {
+            postingsOut.close();
+            offsetsOut.close();
+            blocksOut.close();
+            if (bitmapsOut != null) {
+                bitmapsOut.close();
+            }
+            if (positionsOut != null) {
+                positionsOut.close();
+                positionOffsetsOut.close();
+                positionBlocksOut.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Keeps one index open and answers queries over HTTP on the loopback interface, so a query costs its
+ * search rather than loading the dictionaries, metadata, document lengths and postings again.
+ *   GET /search?q=<query>&mode=<bm25/wand/bmw/saat/and>&k=<k>
+ * answers text/plain lines of rank, DOCNO and score; mode=and takes the query language of BooleanAnd,
+ * quoted phrases included, and gives every match in docid order without a score. Requests run on a fixed
+ * pool of threads, each with its own scorer accumulators over the shared read-only index.
+ * Answers are cached by mode, k and the sorted analyzed terms of the query (the planned query for Boolean
+ * mode), so a query repeated with its terms in any order is served from memory; exhaustive BM25 also keeps
+ * hot decoded postings. GET /stats reports the hits, misses and evictions of both caches.
+ * The postings are mapped, so opening the index is cheap and a query pages in the lists it reads; --warm
+ * runs the topics of a queries file once before listening so their postings are resident and cached.
+ */
+public class QueryServer {
+
+    static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_K = 10;
+    static final String RESULT_CACHE_OPTION = "--result-cache-mb=";
+    static final String WARM_OPTION = "--warm=";
+    static final long DEFAULT_RESULT_CACHE_MB = 64;
+    static final long DEFAULT_POSTINGS_CACHE_MB = 256;
+
+    private final SegmentedIndex index;
+    private final boolean stem;
+    private final BooleanSearch booleanSearch;
+    private final WandSearch wandSearch;
+    private final ThreadLocal<BM25Scorer> scorers;
+    private final ThreadLocal<ImpactIndex> impactIndexes;
+    private final BM25Scorer scorer;
+    private final LruCache<String, String> resultCache;
+
+    public QueryServer(String indexDir, boolean stem, long resultCacheBytes, long postingsCacheBytes)
+            throws IOException {
+        this.index = new SegmentedIndex(indexDir);
+        this.stem = index.getAnalyzer(stem).isStemming();
+        DocLengths docLengths = index.openDocLengths();
+        scorer = new BM25Scorer(index, docLengths, postingsCacheBytes);
+        resultCache = new LruCache<>("result", resultCacheBytes, result -> 2L * result.length());
+        scorers = ThreadLocal.withInitial(scorer::copy);
+        wandSearch = new WandSearch(index, docLengths);
+        booleanSearch = new BooleanSearch(index, docLengths);
+        if (ImpactIndex.isCurrent(index, indexDir)) {
+            ImpactIndex impactIndex = new ImpactIndex(index, indexDir);
+            impactIndexes = ThreadLocal.withInitial(impactIndex::copy);
+        } else {
+            if (ImpactIndex.exists(indexDir)) {
+                System.err.println("Impact-ordered postings in " + indexDir
+                        + " are out of date; mode=saat is disabled until IndexEngine rebuilds them");
+            }
+            impactIndexes = null;
+        }
+    }
+
+    public static void main(String[] args) {
+        int threads = BatchRunner.parseThreads(args, Runtime.getRuntime().availableProcessors());
+        long resultCacheBytes = BatchRunner.parseOption(args, RESULT_CACHE_OPTION, DEFAULT_RESULT_CACHE_MB) << 20;
+        long postingsCacheBytes = BatchRunner.parseOption(args, BM25.POSTINGS_CACHE_OPTION,
+                DEFAULT_POSTINGS_CACHE_MB) << 20;
+        String warmFile = BatchRunner.optionValue(args, WARM_OPTION);
+        args = BatchRunner.withoutOptions(args);
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Please input: java QueryServer <index-directory> <Stem/No> [port] [--threads=N] [--result-cache-mb=N] [--postings-cache-mb=N] [--warm=<queries-file>]");
+            return;
+        }
+
+        String indexDir = args[0];
+        boolean stem = args[1].equalsIgnoreCase("Stem");
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+
+        try {
+            long start = System.nanoTime();
+            QueryServer server = new QueryServer(indexDir, stem, resultCacheBytes, postingsCacheBytes);
+            if (warmFile != null) {
+                server.warm(warmFile);
+            }
+            HttpServer http = server.start(port, threads);
+            System.out.printf("Loaded %s in %.1f ms; listening on http://%s:%d/search with %d thread(s)%n",
+                    indexDir, (System.nanoTime() - start) / 1e6, http.getAddress().getHostString(),
+                    http.getAddress().getPort(), threads);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public HttpServer start(int port, int threads) throws IOException {
+        // without TCP_NODELAY the response body waits out the client's delayed ACK, about 40 ms a query
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        http.setExecutor(executor);
+        http.createContext("/search", this::handleSearch);
+        http.createContext("/stats", exchange -> respond(exchange, 200, stats()));
+        http.start();
+        return http;
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                respond(exchange, 405, "only GET is supported\n");
+                return;
+            }
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            String query = params.get("q");
+            if (query == null || query.isBlank()) {
+                respond(exchange, 400, "missing q parameter\n");
+                return;
+            }
+            String mode = params.getOrDefault("mode", "bm25");
+            int k = Integer.parseInt(params.getOrDefault("k", String.valueOf(DEFAULT_K)));
+            if (k < 1) {
+                respond(exchange, 400, "k must be positive\n");
+                return;
+            }
+            String results = search(query, mode, k);
+            if (results == null && mode.equalsIgnoreCase("saat")) {
+                respond(exchange, 400, "this index has no current impact-ordered postings\n");
+                return;
+            }
+            if (results == null) {
+                respond(exchange, 400, "unknown mode " + mode + "\n");
+                return;
+            }
+            respond(exchange, 200, results);
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "k must be a number\n");
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respond(exchange, 500, "search failed\n");
+        }
+    }
+
+    public void warm(String queriesFile) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(queriesFile));
+        for (int i = 1; i < lines.size(); i += 2) {
+            search(lines.get(i), "bm25", DEFAULT_K);
+        }
+    }
+
+    public String stats() {
+        LruCache<Long, int[][]> postingsCache = scorer.getPostingsCache();
+        return resultCache + "\n" + (postingsCache != null ? postingsCache + "\n" : "");
+    }
+
+    public String search(String query, String mode, int k) {
+        if (mode.equalsIgnoreCase("and")) {
+            BooleanQuery parsed = booleanSearch.plan(BooleanQuery.parse(query, stem));
+            String key = "and " + parsed;
+            String cached = resultCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            List<Integer> resultSet = booleanSearch.search(parsed, true);
+            StringBuilder output = new StringBuilder();
+            for (int i = 0; i < resultSet.size(); i++) {
+                output.append(i + 1).append(' ').append(index.getDocNo(resultSet.get(i))).append('\n');
+            }
+            resultCache.put(key, output.toString());
+            return output.toString();
+        }
+
+        List<String> tokens = BM25.tokenize(query, stem);
+        List<String> sortedTokens = new ArrayList<>(tokens);
+        Collections.sort(sortedTokens);
+        String key = mode.toLowerCase() + " " + k + " " + sortedTokens;
+        String cached = resultCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        TopKHeap topDocs = new TopKHeap(Math.min(k, Math.max(1, index.getDocumentCount())));
+        if (mode.equalsIgnoreCase("bm25")) {
+            scorers.get().search(tokens, topDocs);
+        } else if (mode.equalsIgnoreCase("wand") || mode.equalsIgnoreCase("bmw")) {
+            wandSearch.search(tokens, mode.equalsIgnoreCase("bmw"), topDocs);
+        } else if (mode.equalsIgnoreCase("saat") && impactIndexes != null) {
+            impactIndexes.get().search(tokens, Long.MAX_VALUE, 0, topDocs);
+        } else {
+            return null;
+        }
+        StringBuilder output = new StringBuilder();
+        for (int rank = 1; rank <= topDocs.size(); rank++) {
+            output.append(rank).append(' ').append(index.getDocNo(topDocs.getDocId(rank - 1))).append(' ')
+                    .append(topDocs.getScore(rank - 1)).append('\n');
+        }
+        resultCache.put(key, output.toString());
+        return output.toString();
+    }
+
+    private static Map<String, String> parseParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
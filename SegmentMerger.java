@@ -0,0 +1,218 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Tiered merge policy: a segment's tier is floor(log4(document count)), and whenever MERGE_FACTOR adjacent
+ * segments share a tier they are rewritten as one segment. Only adjacent segments are merged so global
+ * docids keep their order, and the merged segment replaces its inputs in one atomic segments-file update.
+ * The inputs stay on disk for readers that listed them before the update, until the next IndexEngine run.
+ * The inputs' postings are mapped rather than read onto the heap, so a merge holds one term at a time.
+ */
+public class SegmentMerger {
+
+    static final int MERGE_FACTOR = 4;
+
+    public static void maybeMerge(String indexDir) {
+        try {
+            List<String> segments;
+            while ((segments = Segments.read(indexDir)).size() >= MERGE_FACTOR) {
+                int start = findMergeableRun(indexDir, segments);
+                if (start < 0) {
+                    return;
+                }
+                List<String> inputs = new ArrayList<>(segments.subList(start, start + MERGE_FACTOR));
+                String merged = Segments.newSegmentName(indexDir);
+                try {
+                    mergeSegments(indexDir, inputs, merged);
+                } catch (IOException e) {
+                    deleteRecursively(new File(indexDir, merged));
+                    throw e;
+                }
+
+                boolean committed = Segments.locked(indexDir, () -> {
+                    List<String> current = Segments.read(indexDir);
+                    int position = current.indexOf(inputs.get(0));
+                    if (position < 0 || position + inputs.size() > current.size()
+                            || !current.subList(position, position + inputs.size()).equals(inputs)) {
+                        return false;
+                    }
+                    current.subList(position, position + inputs.size()).clear();
+                    current.add(position, merged);
+                    Segments.write(indexDir, current);
+                    Segments.deleteLater(indexDir, inputs);
+                    return true;
+                });
+                // another process merged some of the same inputs first; its result stands
+                if (!committed) {
+                    deleteRecursively(new File(indexDir, merged));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int findMergeableRun(String indexDir, List<String> segments) throws IOException {
+        int[] tiers = new int[segments.size()];
+        for (int i = 0; i < tiers.length; i++) {
+            int documents = new DocumentMetaData(indexDir + "/" + segments.get(i)).getDocumentCount();
+            tiers[i] = documents <= 1 ? 0 : (31 - Integer.numberOfLeadingZeros(documents)) / 2;
+        }
+        for (int start = 0; start + MERGE_FACTOR <= tiers.length; start++) {
+            int end = start + 1;
+            while (end < start + MERGE_FACTOR && tiers[end] == tiers[start]) {
+                end++;
+            }
+            if (end == start + MERGE_FACTOR) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    public static void mergeSegments(String indexDir, List<String> inputs, String output) throws IOException {
+        String outputDir = indexDir + "/" + output;
+        int segmentCount = inputs.size();
+        String[] inputDirs = new String[segmentCount];
+        TermDictionary[] dictionaries = new TermDictionary[segmentCount];
+        int[] docBases = new int[segmentCount + 1];
+
+        boolean compressed;
+        try (FileInputStream in = new FileInputStream(indexDir + "/" + inputs.get(0) + "/"
+                + DocumentStore.INDEX_FILE)) {
+            compressed = in.read() == 1;
+        }
+
+        DocumentMetaDataWriter metaDataColumns = new DocumentMetaDataWriter();
+        ArrayList<Integer> docLengths = new ArrayList<>();
+        try (DocumentStoreWriter documentStore = new DocumentStoreWriter(outputDir, compressed)) {
+            for (int segment = 0; segment < segmentCount; segment++) {
+                inputDirs[segment] = indexDir + "/" + inputs.get(segment);
+                dictionaries[segment] = new TermDictionary(inputDirs[segment]);
+                try (DocumentStore store = new DocumentStore(inputDirs[segment])) {
+                    DocumentMetaData metaData = store.getMetaData();
+                    docBases[segment + 1] = docBases[segment] + metaData.getDocumentCount();
+                    for (int docId = 0; docId < metaData.getDocumentCount(); docId++) {
+                        String record = store.getDocument(docId);
+                        String oldId = "internal id:" + docId + "\n";
+                        String newId = "internal id:" + (docBases[segment] + docId) + "\n";
+                        int idStart = record.indexOf(oldId);
+                        int shift = 0;
+                        if (idStart >= 0) {
+                            record = record.substring(0, idStart) + newId + record.substring(idStart + oldId.length());
+                            shift = newId.length() - oldId.length();
+                        }
+                        documentStore.append(record.getBytes(StandardCharsets.UTF_8));
+                        metaDataColumns.add(metaData.getDocNo(docId), metaData.getDate(docId),
+                                metaData.getHeadlineOffset(docId) + shift, metaData.getHeadlineLength(docId));
+                    }
+                }
+                IntBuffer lengths = DocLengths.open(inputDirs[segment]);
+                for (int docId = 0; docId < lengths.limit(); docId++) {
+                    docLengths.add(lengths.get(docId));
+                }
+            }
+        }
+        metaDataColumns.write(outputDir);
+        DocLengths.write(docLengths, outputDir);
+
+        List<String> idToTerm = new ArrayList<>();
+        mergeTerms(dictionaries, idToTerm, null, null);
+
+        ByteBuffer[] postings = new ByteBuffer[segmentCount];
+        PositionsReader[] positions = new PositionsReader[segmentCount];
+        boolean positional = true;
+        for (int segment = 0; segment < segmentCount; segment++) {
+            postings[segment] = PostingsCodec.map(inputDirs[segment], PostingsCodec.POSTINGS_FILE);
+            positional &= PositionsReader.exists(inputDirs[segment]);
+        }
+        if (positional) {
+            for (int segment = 0; segment < segmentCount; segment++) {
+                positions[segment] = new PositionsReader(inputDirs[segment]);
+            }
+        }
+        try (PostingsWriter writer = new PostingsWriter(outputDir, idToTerm.size(), positional, docLengths)) {
+            mergeTerms(dictionaries, null, writer, (segment, entry) -> {
+                int df = entry.getDf();
+                int[] docIds = new int[df];
+                int[] tfs = new int[df];
+                PostingsCodec.decodePostings(postings[segment], entry.getPostingsOffset(), df, docIds, tfs);
+                if (positions[segment] == null) {
+                    for (int i = 0; i < df; i++) {
+                        writer.addPosting(docIds[i] + docBases[segment], tfs[i]);
+                    }
+                    return;
+                }
+
+                PositionsReader.Cursor cursor = positions[segment].open(entry.getTermId());
+                int[] termPositions = new int[Arrays.stream(tfs).max().orElse(0)];
+                for (int i = 0; i < df; i++) {
+                    writer.addPosting(docIds[i] + docBases[segment], tfs[i]);
+                    cursor.read(tfs[i], termPositions);
+                    writer.addPositions(termPositions, 0, tfs[i]);
+                }
+            });
+        }
+        TermDictionaryWriter.write(idToTerm, outputDir);
+        Boolean stem = Analyzer.readStem(inputDirs[0]);
+        if (stem != null) {
+            Analyzer.get(stem).write(outputDir);
+        }
+    }
+
+    private interface PostingsCopier {
+        void copy(int segment, TermDictionary.Entry entry) throws IOException;
+    }
+
+    private static void mergeTerms(TermDictionary[] dictionaries, List<String> idToTerm, PostingsWriter writer,
+            PostingsCopier copier) throws IOException {
+        PriorityQueue<SegmentedIndex.TermCursor> queue = SegmentedIndex.TermCursor.open(dictionaries);
+        SegmentedIndex.TermCursor[] sameTerm = new SegmentedIndex.TermCursor[dictionaries.length];
+        int termId = 0;
+        while (!queue.isEmpty()) {
+            byte[] term = queue.peek().bytes;
+            int cursors = 0;
+            int df = 0;
+            while (!queue.isEmpty() && Arrays.equals(queue.peek().bytes, term)) {
+                SegmentedIndex.TermCursor cursor = queue.poll();
+                sameTerm[cursors++] = cursor;
+                df += cursor.entry.getDf();
+            }
+
+            if (idToTerm != null) {
+                idToTerm.add(sameTerm[0].entry.getTerm());
+            }
+            if (writer != null) {
+                writer.startTerm(termId, df);
+                for (int i = 0; i < cursors; i++) {
+                    copier.copy(sameTerm[i].segment, sameTerm[i].entry);
+                }
+            }
+            termId++;
+
+            for (int i = 0; i < cursors; i++) {
+                if (sameTerm[i].next()) {
+                    queue.add(sameTerm[i]);
+                }
+            }
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/*
+ * Read-only view over every segment of an index directory. Segment i's local docids are shifted by the
+ * number of documents in the segments before it, so global docids follow the order the segments were added.
+ * Terms have no global id: a query term is looked up in each segment's mapped dictionary when it is asked
+ * for, and its df is the sum over the segments, so N, avgdl and df are collection-wide without a pass over
+ * every term when the index is opened. A directory without a segments file is read as a single segment.
+ * Every segment must have been analyzed the same way; getAnalyzer gives queries the analyzer recorded with
+ * the segments, or the one asked for when the segments predate the record.
+ */
+public class SegmentedIndex {
+
+    private final String[] segmentDirs;
+    private final TermDictionary[] dictionaries;
+    private final DocumentMetaData[] metaData;
+    private final int[] docBases;
+    private final Boolean stem;
+
+    public SegmentedIndex(String indexDir) throws IOException {
+        List<String> segments = segmentNames(indexDir);
+        int segmentCount = segments.size();
+        segmentDirs = new String[segmentCount];
+        dictionaries = new TermDictionary[segmentCount];
+        metaData = new DocumentMetaData[segmentCount];
+        docBases = new int[segmentCount + 1];
+
+        for (int segment = 0; segment < segmentCount; segment++) {
+            segmentDirs[segment] = indexDir + "/" + segments.get(segment);
+            dictionaries[segment] = new TermDictionary(segmentDirs[segment]);
+            metaData[segment] = new DocumentMetaData(segmentDirs[segment]);
+            docBases[segment + 1] = docBases[segment] + metaData[segment].getDocumentCount();
+        }
+        stem = readStem(indexDir);
+    }
+
+    private static List<String> segmentNames(String indexDir) throws IOException {
+        return Segments.exists(indexDir) ? Segments.read(indexDir) : Collections.singletonList(".");
+    }
+
+    public static Boolean readStem(String indexDir) throws IOException {
+        Boolean stem = null;
+        boolean first = true;
+        for (String segment : segmentNames(indexDir)) {
+            Boolean segmentStem = Analyzer.readStem(indexDir + "/" + segment);
+            if (!first && !Objects.equals(segmentStem, stem)) {
+                throw new IOException("segments of " + indexDir + " were not all analyzed the same way");
+            }
+            stem = segmentStem;
+            first = false;
+        }
+        return stem;
+    }
+
+    public Analyzer getAnalyzer(boolean requestedStem) {
+        if (stem == null) {
+            return Analyzer.get(requestedStem);
+        }
+        if (stem != requestedStem) {
+            System.err.println("The index was built " + (stem ? "with" : "without")
+                    + " stemming; queries are analyzed the same way");
+        }
+        return Analyzer.get(stem);
+    }
+
+    public int getSegmentCount() {
+        return segmentDirs.length;
+    }
+
+    public int getDocumentCount() {
+        return docBases[docBases.length - 1];
+    }
+
+    public String getSegmentDir(int segment) {
+        return segmentDirs[segment];
+    }
+
+    public TermDictionary getDictionary(int segment) {
+        return dictionaries[segment];
+    }
+
+    public int getDocBase(int segment) {
+        return docBases[segment];
+    }
+
+    public String getDocNo(int docId) {
+        int segment = segmentOf(docId);
+        return segment < 0 ? null : metaData[segment].getDocNo(docId - docBases[segment]);
+    }
+
+    private int segmentOf(int docId) {
+        if (docId < 0 || docId >= getDocumentCount()) {
+            return -1;
+        }
+        int segment = Arrays.binarySearch(docBases, docId);
+        if (segment < 0) {
+            return -segment - 2;
+        }
+        while (docBases[segment + 1] == docId) {
+            segment++;
+        }
+        return segment;
+    }
+
+    public DocLengths openDocLengths() throws IOException {
+        return new DocLengths(segmentDirs);
+    }
+
+    // the term's postings as [docid, tf] pairs across every segment, or null when no document has it
+    public List<List<Integer>> loadPostings(String term) throws IOException {
+        List<List<Integer>> postings = new ArrayList<>();
+        for (int segment = 0; segment < segmentDirs.length; segment++) {
+            TermDictionary.Entry entry = dictionaries[segment].lookup(term);
+            if (entry == null || entry.getDf() == 0) {
+                continue;
+            }
+            int[] docIds = new int[entry.getDf()];
+            int[] tfs = new int[entry.getDf()];
+            ByteBuffer segmentPostings = PostingsCodec.map(segmentDirs[segment], PostingsCodec.POSTINGS_FILE);
+            PostingsCodec.decodePostings(segmentPostings, entry.getPostingsOffset(), entry.getDf(), docIds, tfs);
+            for (int i = 0; i < docIds.length; i++) {
+                postings.add(Arrays.asList(docBases[segment] + docIds[i], tfs[i]));
+            }
+        }
+        return postings.isEmpty() ? null : postings;
+    }
+
+    static class TermCursor {
+        final int segment;
+        private final Iterator<TermDictionary.Entry> entries;
+        TermDictionary.Entry entry;
+        byte[] bytes;
+
+        TermCursor(int segment, Iterator<TermDictionary.Entry> entries) {
+            this.segment = segment;
+            this.entries = entries;
+        }
+
+        static PriorityQueue<TermCursor> open(TermDictionary[] dictionaries) {
+            PriorityQueue<TermCursor> queue = new PriorityQueue<>(Math.max(1, dictionaries.length), (a, b) -> {
+                int comparison = Arrays.compareUnsigned(a.bytes, b.bytes);
+                return comparison != 0 ? comparison : Integer.compare(a.segment, b.segment);
+            });
+            for (int segment = 0; segment < dictionaries.length; segment++) {
+                TermCursor cursor = new TermCursor(segment, dictionaries[segment].iterator());
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            return queue;
+        }
+
+        boolean next() {
+            if (!entries.hasNext()) {
+                return false;
+            }
+            entry = entries.next();
+            bytes = entry.getTerm().getBytes(StandardCharsets.UTF_8);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * An index directory holds one immutable sub-directory per segment and a "segments" file listing the live
+ * segments in docid order, one name per line. The list is only ever replaced atomically, so a query that
+ * reads it sees either the old or the new set of segments.
+ * Choosing a segment name, adding a segment and committing a merge read and then rewrite the directory, so
+ * they hold an exclusive lock on the write.lock file; the lock is held by the process, which keeps a merger
+ * still running from an earlier IndexEngine apart from the next one.
+ * Readers take no lock and open a segment's files some time after listing it, so segments a merge replaced
+ * are only named in the pending-deletes file and removed by the next writer run.
+ */
+public class Segments {
+
+    static final String SEGMENTS_FILE = "segments";
+    static final String LOCK_FILE = "write.lock";
+    static final String PENDING_DELETES_FILE = "pending-deletes";
+    private static final String SEGMENT_PREFIX = "seg-";
+
+    public static boolean exists(String indexDir) {
+        return new File(indexDir, SEGMENTS_FILE).exists();
+    }
+
+    public static synchronized List<String> read(String indexDir) throws IOException {
+        List<String> segments = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(indexDir, SEGMENTS_FILE), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                segments.add(line.trim());
+            }
+        }
+        return segments;
+    }
+
+    public static synchronized void write(String indexDir, List<String> segments) throws IOException {
+        Path target = Paths.get(indexDir, SEGMENTS_FILE);
+        Path temporary = Paths.get(indexDir, SEGMENTS_FILE + ".tmp");
+        Files.write(temporary, segments, StandardCharsets.UTF_8);
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public interface Update<T> {
+        T apply() throws IOException;
+    }
+
+    // a file lock is held per process, so threads of one process also take the class monitor
+    public static synchronized <T> T locked(String indexDir, Update<T> update) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(indexDir, LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                return update.apply();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // call while holding the lock
+    static void deleteLater(String indexDir, List<String> segments) throws IOException {
+        Path pending = Paths.get(indexDir, PENDING_DELETES_FILE);
+        List<String> names = Files.exists(pending) ? Files.readAllLines(pending, StandardCharsets.UTF_8)
+                : new ArrayList<>();
+        names.addAll(segments);
+        Path temporary = Paths.get(indexDir, PENDING_DELETES_FILE + ".tmp");
+        Files.write(temporary, names, StandardCharsets.UTF_8);
+        Files.move(temporary, pending, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void deletePending(String indexDir) throws IOException {
+        locked(indexDir, () -> {
+            Path pending = Paths.get(indexDir, PENDING_DELETES_FILE);
+            if (!Files.exists(pending)) {
+                return null;
+            }
+            List<String> live = read(indexDir);
+            for (String line : Files.readAllLines(pending, StandardCharsets.UTF_8)) {
+                String name = line.trim();
+                if (name.startsWith(SEGMENT_PREFIX) && !live.contains(name)) {
+                    SegmentMerger.deleteRecursively(new File(indexDir, name));
+                }
+            }
+            Files.delete(pending);
+            return null;
+        });
+    }
+
+    public static void add(String indexDir, String segment) throws IOException {
+        locked(indexDir, () -> {
+            List<String> segments = exists(indexDir) ? read(indexDir) : new ArrayList<>();
+            segments.add(segment);
+            write(indexDir, segments);
+            return null;
+        });
+    }
+
+    public static String newSegmentName(String indexDir) throws IOException {
+        return locked(indexDir, () -> createSegment(indexDir));
+    }
+
+    private static String createSegment(String indexDir) throws IOException {
+        int next = 0;
+        String[] names = new File(indexDir).list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX)) {
+                    try {
+                        next = Math.max(next, Integer.parseInt(name.substring(SEGMENT_PREFIX.length())) + 1);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                }
+            }
+        }
+        String name = SEGMENT_PREFIX + next;
+        Files.createDirectory(Paths.get(indexDir, name));
+        return name;
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Generates documents in the <DOC> layout of the LA Times collection from a fixed seed, so benchmarks can
+ * run on any machine without the licensed data. Words are drawn from a Zipfian distribution over the
+ * vocabulary; each stem appears as four surface forms (plain, -s, -ing, -ed) so stemming has work to do.
+ * Document lengths are log-normal around a median of about 250 words with a long tail, headlines take
+ * 4 to 12 words, and DOCNOs follow LAmmddyy-nnnn so getMetaData can derive a date from them.
+ * Topics are written in the two-line format the query programs read, numbered from 401 like the TREC
+ * topics, with two to four words each.
+ *   java SyntheticCorpus <corpus.gz> <topics-file> <documents> <topics> [vocabulary] [seed]
+ */
+public class SyntheticCorpus {
+
+    static final int DEFAULT_VOCABULARY = 50000;
+    static final double ZIPF_EXPONENT = 1.0;
+    static final int FIRST_TOPIC = 401;
+    static final long DEFAULT_SEED = 42;
+    static final int GUIDE_SIZE = 1 << 16;
+
+    private static final String[] CONSONANTS = {"b", "c", "d", "f", "g", "h", "k", "l", "m", "n", "p", "r", "s",
+            "t", "v", "w", "br", "ch", "st", "tr"};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ea", "ou"};
+    private static final String[] SUFFIXES = {"", "s", "ing", "ed"};
+
+    private final String[] words;
+    private final double[] cumulative;
+    private final int[] guide = new int[GUIDE_SIZE + 1];
+    private final long seed;
+
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 6) {
+            System.err.println("Please input: java SyntheticCorpus <corpus.gz> <topics-file> <documents> <topics> [vocabulary] [seed]");
+            return;
+        }
+        int documents = Integer.parseInt(args[2]);
+        int topics = Integer.parseInt(args[3]);
+        int vocabulary = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_VOCABULARY;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_SEED;
+
+        long start = System.nanoTime();
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabulary, seed);
+        try {
+            corpus.writeDocuments(args[0], documents);
+            corpus.writeTopics(args[1], topics);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.out.printf("Wrote %d documents and %d topics over %d words in %.1f s%n", documents, topics,
+                vocabulary, (System.nanoTime() - start) / 1e9);
+    }
+
+    public SyntheticCorpus(int vocabulary, long seed) {
+        this.seed = seed;
+        words = new String[vocabulary];
+        cumulative = new double[vocabulary];
+        double total = 0;
+        for (int rank = 0; rank < vocabulary; rank++) {
+            words[rank] = word(rank);
+            total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < vocabulary; rank++) {
+            cumulative[rank] /= total;
+        }
+        int rank = 0;
+        for (int bucket = 0; bucket <= GUIDE_SIZE; bucket++) {
+            while (rank < vocabulary - 1 && cumulative[rank] < (double) bucket / GUIDE_SIZE) {
+                rank++;
+            }
+            guide[bucket] = rank;
+        }
+    }
+
+    // the stem is the rank in base syllables, so frequent words are short like they are in English
+    private static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        int stem = rank / SUFFIXES.length + 1;
+        int syllables = CONSONANTS.length * VOWELS.length;
+        while (stem > 0) {
+            int syllable = stem % syllables;
+            word.append(CONSONANTS[syllable % CONSONANTS.length]).append(VOWELS[syllable / CONSONANTS.length]);
+            stem /= syllables;
+        }
+        if (word.length() < 3) {
+            word.append('n');
+        }
+        return word.append(SUFFIXES[rank % SUFFIXES.length]).toString();
+    }
+
+    public int getVocabularySize() {
+        return words.length;
+    }
+
+    public String getWord(int rank) {
+        return words[rank];
+    }
+
+    // the guide table narrows the binary search to the ranks whose cumulative probability shares u's bucket
+    public int sampleRank(RandomGenerator random) {
+        double u = random.nextDouble();
+        int bucket = (int) (u * GUIDE_SIZE);
+        int low = guide[bucket];
+        int high = guide[bucket + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static String docNo(int id) {
+        int day = id / 10000 % 365;
+        return String.format("LA%02d%02d89-%04d", day / 28 % 12 + 1, day % 28 + 1, id % 10000);
+    }
+
+    public int documentLength(RandomGenerator random) {
+        return (int) Math.max(8, Math.min(20000, Math.exp(5.5 + 0.8 * random.nextGaussian())));
+    }
+
+    // every document is generated from its own seed, so document i is the same however many are written
+    public String document(int id) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + id);
+        StringBuilder doc = new StringBuilder(2048);
+        doc.append("<DOC>\n<DOCNO> ").append(docNo(id)).append(" </DOCNO>\n");
+        doc.append("<DOCID> ").append(id).append(" </DOCID>\n");
+        doc.append("<HEADLINE>\n<P>\n");
+        appendWords(doc, 4 + random.nextInt(9), 0, random);
+        doc.append("\n</P>\n</HEADLINE>\n<TEXT>\n");
+        int length = documentLength(random);
+        while (length > 0) {
+            int paragraph = Math.min(length, 20 + random.nextInt(100));
+            doc.append("<P>\n");
+            appendWords(doc, paragraph, 12, random);
+            doc.append("\n</P>\n");
+            length -= paragraph;
+        }
+        doc.append("</TEXT>\n</DOC>\n");
+        return doc.toString();
+    }
+
+    private void appendWords(StringBuilder doc, int count, int wordsPerLine, RandomGenerator random) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                doc.append(wordsPerLine > 0 && i % wordsPerLine == 0 ? '\n' : ' ');
+            }
+            doc.append(words[sampleRank(random)]);
+            if (random.nextInt(12) == 0) {
+                doc.append(random.nextBoolean() ? ',' : '.');
+            }
+        }
+    }
+
+    // query terms skip the most frequent ranks, which behave like stopwords
+    public String query(int id, int terms) {
+        SplittableRandom random = new SplittableRandom(~seed * 0x9E3779B97F4A7C15L + id);
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            int rank;
+            do {
+                rank = sampleRank(random);
+            } while (rank < 50);
+            if (i > 0) {
+                query.append(' ');
+            }
+            query.append(words[rank]);
+        }
+        return query.toString();
+    }
+
+    public void writeTopics(String filePath, int topics) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(filePath, StandardCharsets.UTF_8))) {
+            for (int topic = FIRST_TOPIC; topic < FIRST_TOPIC + topics; topic++) {
+                out.write(topic + "\n" + query(topic, 2 + new SplittableRandom(seed + topic).nextInt(3)) + "\n");
+            }
+        }
+    }
+
+    // the fastest deflate level: inflating costs about the same whichever level wrote the file
+    public void writeDocuments(String filePath, int documents) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(filePath), 1 << 16) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8))) {
+            for (int id = 0; id < documents; id++) {
+                out.write(document(id));
+            }
+        }
+    }
+}
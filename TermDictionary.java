@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * terms.dict holds the lexicon sorted by the UTF-8 bytes of each term and front-coded in blocks of
+ * BLOCK_SIZE terms. The header is the term count, the block count, the byte offset of every block and the
+ * block number of every termId. Each entry is varint shared-prefix length, varint suffix length, the suffix
+ * bytes, varint termId, varint df and varint postings offset; the first entry of a block shares nothing.
+ */
+public class TermDictionary implements Iterable<TermDictionary.Entry> {
+
+    static final String DICTIONARY_FILE = "terms.dict";
+    static final int BLOCK_SIZE = 16;
+
+    private final MappedByteBuffer dictionary;
+    private final int termCount;
+    private final long[] blockOffsets;
+    private final int termBlocksStart;
+
+    public TermDictionary(String indexDir) throws IOException {
+        this(indexDir, DICTIONARY_FILE);
+    }
+
+    public TermDictionary(String indexDir, String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(indexDir, fileName))) {
+            dictionary = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        termCount = dictionary.getInt(0);
+        int blockCount = dictionary.getInt(4);
+        termBlocksStart = 8 + 8 * blockCount;
+        int blocksStart = termBlocksStart + 4 * termCount;
+        blockOffsets = new long[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            blockOffsets[block] = blocksStart + dictionary.getLong(8 + 8 * block);
+        }
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getTermId(String term) {
+        BlockReader reader = find(term);
+        return reader == null ? -1 : reader.termId;
+    }
+
+    public Entry lookup(String term) {
+        BlockReader reader = find(term);
+        return reader == null ? null : reader.entry();
+    }
+
+    private BlockReader find(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareFirstTerm(mid, key) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return null;
+        }
+
+        BlockReader reader = new BlockReader(block);
+        while (reader.next()) {
+            int comparison = Arrays.compareUnsigned(reader.term, 0, reader.termLength, key, 0, key.length);
+            if (comparison == 0) {
+                return reader;
+            }
+            if (comparison > 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public String getTerm(int termId) {
+        if (termId < 0 || termId >= termCount) {
+            return null;
+        }
+        BlockReader reader = new BlockReader(dictionary.getInt(termBlocksStart + 4 * termId));
+        while (reader.next()) {
+            if (reader.termId == termId) {
+                return new String(reader.term, 0, reader.termLength, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int block = 0;
+            private BlockReader reader = blockOffsets.length == 0 ? null : new BlockReader(0);
+            private boolean ready = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!ready && reader != null) {
+                    if (reader.next()) {
+                        ready = true;
+                    } else if (++block < blockOffsets.length) {
+                        reader = new BlockReader(block);
+                    } else {
+                        reader = null;
+                    }
+                }
+                return ready;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                return reader.entry();
+            }
+        };
+    }
+
+    private int compareFirstTerm(int block, byte[] key) {
+        int position = (int) blockOffsets[block];
+        int[] cursor = { position };
+        readVInt(cursor);
+        int length = readVInt(cursor);
+        position = cursor[0];
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (dictionary.get(position + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private int readVInt(int[] cursor) {
+        return (int) readVLong(cursor);
+    }
+
+    private long readVLong(int[] cursor) {
+        int position = cursor[0];
+        byte b = dictionary.get(position++);
+        long value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = dictionary.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+        }
+        cursor[0] = position;
+        return value;
+    }
+
+    private class BlockReader {
+        private final int[] cursor = new int[1];
+        private int remaining;
+        private byte[] term = new byte[32];
+        private int termLength = 0;
+        private int termId;
+        private int df;
+        private long postingsOffset;
+
+        BlockReader(int block) {
+            cursor[0] = (int) blockOffsets[block];
+            remaining = Math.min(BLOCK_SIZE, termCount - block * BLOCK_SIZE);
+        }
+
+        boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            int prefix = readVInt(cursor);
+            int suffix = readVInt(cursor);
+            termLength = prefix + suffix;
+            if (termLength > term.length) {
+                term = Arrays.copyOf(term, Math.max(termLength, term.length * 2));
+            }
+            for (int i = 0; i < suffix; i++) {
+                term[prefix + i] = dictionary.get(cursor[0] + i);
+            }
+            cursor[0] += suffix;
+            termId = readVInt(cursor);
+            df = readVInt(cursor);
+            postingsOffset = readVLong(cursor);
+            return true;
+        }
+
+        Entry entry() {
+            return new Entry(new String(term, 0, termLength, StandardCharsets.UTF_8), termId, df, postingsOffset);
+        }
+    }
+
+    public static class Entry {
+        private final String term;
+        private final int termId;
+        private final int df;
+        private final long postingsOffset;
+
+        public Entry(String term, int termId, int df, long postingsOffset) {
+            this.term = term;
+            this.termId = termId;
+            this.df = df;
+            this.postingsOffset = postingsOffset;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public int getTermId() {
+            return termId;
+        }
+
+        public int getDf() {
+            return df;
+        }
+
+        public long getPostingsOffset() {
+            return postingsOffset;
+        }
+    }
+}
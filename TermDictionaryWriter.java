@@ -0,0 +1,83 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class TermDictionaryWriter {
+
+    public static void write(List<String> idToTerm, String folderPath) throws IOException {
+        int termCount = idToTerm.size();
+        long[] postingsOffsets = new long[termCount];
+        int[] dfs = new int[termCount];
+        try (DataInputStream offsetsIn = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(folderPath + "/" + PostingsCodec.OFFSETS_FILE)))) {
+            int postingsTermCount = offsetsIn.readInt();
+            for (int termId = 0; termId < Math.min(termCount, postingsTermCount); termId++) {
+                postingsOffsets[termId] = offsetsIn.readLong();
+                dfs[termId] = offsetsIn.readInt();
+            }
+        }
+        write(idToTerm, dfs, postingsOffsets, folderPath + "/" + TermDictionary.DICTIONARY_FILE);
+    }
+
+    public static void write(List<String> idToTerm, int[] dfs, long[] postingsOffsets, String file)
+            throws IOException {
+        int termCount = idToTerm.size();
+        byte[][] terms = new byte[termCount][];
+        Integer[] sortedTermIds = new Integer[termCount];
+        for (int termId = 0; termId < termCount; termId++) {
+            terms[termId] = idToTerm.get(termId).getBytes(StandardCharsets.UTF_8);
+            sortedTermIds[termId] = termId;
+        }
+        Arrays.sort(sortedTermIds, (a, b) -> Arrays.compareUnsigned(terms[a], terms[b]));
+
+        int blockCount = (termCount + TermDictionary.BLOCK_SIZE - 1) / TermDictionary.BLOCK_SIZE;
+        long[] blockOffsets = new long[blockCount];
+        int[] termBlocks = new int[termCount];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+
+        byte[] previous = new byte[0];
+        for (int i = 0; i < termCount; i++) {
+            int termId = sortedTermIds[i];
+            byte[] term = terms[termId];
+            int block = i / TermDictionary.BLOCK_SIZE;
+            int prefix = 0;
+            if (i % TermDictionary.BLOCK_SIZE == 0) {
+                blockOffsets[block] = blocks.size();
+            } else {
+                int maxPrefix = Math.min(previous.length, term.length);
+                while (prefix < maxPrefix && previous[prefix] == term[prefix]) {
+                    prefix++;
+                }
+            }
+            termBlocks[termId] = block;
+
+            PostingsCodec.writeVInt(blocks, prefix);
+            PostingsCodec.writeVInt(blocks, term.length - prefix);
+            blocks.write(term, prefix, term.length - prefix);
+            PostingsCodec.writeVInt(blocks, termId);
+            PostingsCodec.writeVInt(blocks, dfs[termId]);
+            PostingsCodec.writeVLong(blocks, postingsOffsets[termId]);
+            previous = term;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(termCount);
+            out.writeInt(blockCount);
+            for (long blockOffset : blockOffsets) {
+                out.writeLong(blockOffset);
+            }
+            for (int block : termBlocks) {
+                out.writeInt(block);
+            }
+            blocks.writeTo(out);
+        }
+    }
+}
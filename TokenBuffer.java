@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The analyzed terms of one text packed end to end in a char array, so tokenizing a document makes no
+ * object per token. Term i is getChars()[getStart(i), getStart(i) + getLength(i)).
+ */
+public class TokenBuffer {
+
+    private char[] chars = new char[256];
+    private int[] ends = new int[64];
+    private int size = 0;
+
+    public void add(char[] term, int length) {
+        int start = size == 0 ? 0 : ends[size - 1];
+        if (start + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(start + length, chars.length * 2));
+        }
+        if (size == ends.length) {
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        System.arraycopy(term, 0, chars, start, length);
+        ends[size++] = start + length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public char[] getChars() {
+        return chars;
+    }
+
+    public int getStart(int i) {
+        return i == 0 ? 0 : ends[i - 1];
+    }
+
+    public int getLength(int i) {
+        return ends[i] - getStart(i);
+    }
+
+    public String get(int i) {
+        return new String(chars, getStart(i), getLength(i));
+    }
+
+    public List<String> toList() {
+        List<String> terms = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            terms.add(get(i));
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Keeps the k best (docid, score) pairs offered so far in a fixed-size binary min-heap, so ranking a query
+ * costs O(n log k) instead of sorting every candidate. Ties on score go to the pair offered first, the same
+ * order a stable sort over the offer sequence gives.
+ */
+public class TopKHeap {
+
+    private final int[] docIds;
+    private final double[] scores;
+    private final int[] arrivals;
+    private int size = 0;
+    private int offered = 0;
+
+    public TopKHeap(int k) {
+        docIds = new int[k];
+        scores = new double[k];
+        arrivals = new int[k];
+    }
+
+    public void clear() {
+        size = 0;
+        offered = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return docIds.length;
+    }
+
+    public double threshold() {
+        if (size < docIds.length) {
+            return docIds.length == 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+        return scores[0];
+    }
+
+    public void offer(int docId, double score) {
+        int arrival = offered++;
+        if (size < docIds.length) {
+            set(size, docId, score, arrival);
+            siftUp(size++);
+        } else if (size > 0 && score > scores[0]) {
+            set(0, docId, score, arrival);
+            siftDown(0, size);
+        }
+    }
+
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int getDocId(int rank) {
+        return docIds[rank];
+    }
+
+    public double getScore(int rank) {
+        return scores[rank];
+    }
+
+    private boolean worse(int i, int j) {
+        return scores[i] < scores[j] || (scores[i] == scores[j] && arrivals[i] > arrivals[j]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(i, parent)) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && worse(child + 1, child)) {
+                child++;
+            }
+            if (!worse(child, i)) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void set(int i, int docId, double score, int arrival) {
+        docIds[i] = docId;
+        scores[i] = score;
+        arrivals[i] = arrival;
+    }
+
+    private void swap(int i, int j) {
+        int docId = docIds[i];
+        double score = scores[i];
+        int arrival = arrivals[i];
+        set(i, docIds[j], scores[j], arrivals[j]);
+        set(j, docId, score, arrival);
+    }
+}
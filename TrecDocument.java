@@ -0,0 +1,171 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Finds the DOCNO, HEADLINE, TEXT and GRAPHIC regions of one raw <DOC> block in a single pass over its
+ * characters and tokenizes those regions in place, with the same results as extractTextFromTags followed
+ * by Analyzer.tokenize: newlines are dropped, markup tags are removed and the three text regions never
+ * share a token.
+ */
+public class TrecDocument {
+
+    private static final char[] DOCNO_OPEN = "<DOCNO>".toCharArray();
+    private static final char[] DOCNO_CLOSE = "</DOCNO>".toCharArray();
+    private static final char[] HEADLINE_OPEN = "<HEADLINE>".toCharArray();
+    private static final char[] HEADLINE_CLOSE = "</HEADLINE>".toCharArray();
+    private static final char[] TEXT_OPEN = "<TEXT>".toCharArray();
+    private static final char[] TEXT_CLOSE = "</TEXT>".toCharArray();
+    private static final char[] GRAPHIC_OPEN = "<GRAPHIC>".toCharArray();
+    private static final char[] GRAPHIC_CLOSE = "</GRAPHIC>".toCharArray();
+    private static final char[] PARAGRAPH_OPEN = "<P>".toCharArray();
+    private static final char[] PARAGRAPH_CLOSE = "</P>".toCharArray();
+
+    private final char[] text;
+    private final int[] regions = new int[6];
+
+    public TrecDocument(char[] text) {
+        this.text = text;
+        findRegion(HEADLINE_OPEN, HEADLINE_CLOSE, 0);
+        findRegion(TEXT_OPEN, TEXT_CLOSE, 2);
+        findRegion(GRAPHIC_OPEN, GRAPHIC_CLOSE, 4);
+    }
+
+    public char[] getText() {
+        return text;
+    }
+
+    public Map<String, String> getMetaData(int id) {
+        Map<String, String> mapMetaData = new HashMap<>();
+        mapMetaData.put("id", String.valueOf(id));
+
+        for (int open = indexOf(DOCNO_OPEN, 0, text.length); open >= 0;
+                open = indexOf(DOCNO_OPEN, open + 1, text.length)) {
+            int start = open + DOCNO_OPEN.length;
+            int close = indexOf(DOCNO_CLOSE, start + 1, lineEnd(start));
+            if (close >= 0) {
+                String docNo = new String(text, start, close - start);
+                mapMetaData.put("DOCNO", docNo.trim());
+                mapMetaData.put("Date",
+                        docNo.substring(3, 5) + "-" + docNo.substring(5, 7) + "-19" + docNo.substring(7, 9));
+                break;
+            }
+        }
+
+        for (int open = indexOf(HEADLINE_OPEN, 0, text.length); open >= 0;
+                open = indexOf(HEADLINE_OPEN, open + 1, text.length)) {
+            int start = open + HEADLINE_OPEN.length;
+            while (start < text.length && isRegexWhitespace(text[start])) {
+                start++;
+            }
+            if (!startsWith(PARAGRAPH_OPEN, start)) {
+                continue;
+            }
+            start += PARAGRAPH_OPEN.length;
+            int close = indexOf(PARAGRAPH_CLOSE, start, text.length);
+            if (close >= 0) {
+                mapMetaData.put("Headline", new String(text, start, close - start).trim());
+                break;
+            }
+        }
+
+        return mapMetaData;
+    }
+
+    public List<String> tokenize(boolean stem) {
+        return tokenize(Analyzer.get(stem));
+    }
+
+    public List<String> tokenize(Analyzer analyzer) {
+        TokenBuffer tokens = new TokenBuffer();
+        tokenize(analyzer, tokens);
+        return tokens.toList();
+    }
+
+    public void tokenize(Analyzer analyzer, TokenBuffer tokens) {
+        char[] token = new char[64];
+        for (int region = 0; region < regions.length; region += 2) {
+            int end = regions[region + 1];
+            int length = 0;
+            for (int i = regions[region]; i < end; i++) {
+                char c = text[i];
+                if (c == '\n') {
+                    continue;
+                }
+                if (c == '<') {
+                    int tagEnd = tagEnd(i, end);
+                    if (tagEnd >= 0) {
+                        i = tagEnd;
+                        continue;
+                    }
+                }
+
+                c = Character.toLowerCase(c);
+                if (Character.isLetterOrDigit(c)) {
+                    if (length == token.length) {
+                        token = Arrays.copyOf(token, length * 2);
+                    }
+                    token[length++] = c;
+                } else if (length > 0) {
+                    tokens.add(token, analyzer.analyze(token, length));
+                    length = 0;
+                }
+            }
+            if (length > 0) {
+                tokens.add(token, analyzer.analyze(token, length));
+            }
+        }
+    }
+
+    private int tagEnd(int open, int end) {
+        int tagCharacters = 0;
+        for (int i = open + 1; i < end; i++) {
+            char c = text[i];
+            if (c == '>') {
+                return tagCharacters > 0 ? i : -1;
+            }
+            if (c != '\n') {
+                tagCharacters++;
+            }
+        }
+        return -1;
+    }
+
+    private void findRegion(char[] openTag, char[] closeTag, int region) {
+        int open = indexOf(openTag, 0, text.length);
+        if (open >= 0) {
+            int start = open + openTag.length;
+            int close = indexOf(closeTag, start, text.length);
+            if (close >= 0) {
+                regions[region] = start;
+                regions[region + 1] = close;
+            }
+        }
+    }
+
+    private int lineEnd(int from) {
+        while (from < text.length && text[from] != '\n') {
+            from++;
+        }
+        return from;
+    }
+
+    private boolean startsWith(char[] tag, int offset) {
+        return offset + tag.length <= text.length && TrecDocumentReader.regionMatches(text, offset, tag);
+    }
+
+    private int indexOf(char[] tag, int from, int to) {
+        int last = to - tag.length;
+        for (int i = from; i <= last; i++) {
+            if (text[i] == tag[0] && TrecDocumentReader.regionMatches(text, i, tag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
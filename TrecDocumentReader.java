@@ -0,0 +1,109 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+public class TrecDocumentReader implements Closeable {
+
+    private static final char[] DOC_END_TAG = "</DOC>".toCharArray();
+
+    private final Reader in;
+    private char[] buffer = new char[1 << 16];
+    private int start = 0;
+    private int scanned = 0;
+    private int end = 0;
+    private boolean endOfInput = false;
+
+    public TrecDocumentReader(Reader in) {
+        this.in = in;
+    }
+
+    public char[] nextDocument() throws IOException {
+        int tagEnd = -1;
+        while (tagEnd < 0) {
+            tagEnd = indexOf(DOC_END_TAG, scanned, end);
+            if (tagEnd >= 0) {
+                tagEnd += DOC_END_TAG.length;
+            } else {
+                scanned = Math.max(start, end - DOC_END_TAG.length + 1);
+                if (!fill()) {
+                    return null;
+                }
+            }
+        }
+
+        int lineEnd = tagEnd;
+        while (true) {
+            while (lineEnd < end && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd < end) {
+                break;
+            }
+            int lineEndOffset = lineEnd - start;
+            boolean filled = fill();
+            lineEnd = start + lineEndOffset;
+            if (!filled) {
+                break;
+            }
+        }
+
+        char[] document;
+        if (lineEnd < end) {
+            document = Arrays.copyOfRange(buffer, start, lineEnd + 1);
+            start = lineEnd + 1;
+        } else {
+            document = Arrays.copyOf(Arrays.copyOfRange(buffer, start, end), end - start + 1);
+            document[document.length - 1] = '\n';
+            start = end;
+        }
+        scanned = start;
+        return document;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    private int indexOf(char[] tag, int from, int to) {
+        int last = to - tag.length;
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] == tag[0] && regionMatches(buffer, i, tag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean regionMatches(char[] text, int offset, char[] tag) {
+        for (int j = 0; j < tag.length; j++) {
+            if (text[offset + j] != tag[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
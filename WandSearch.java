@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Document-at-a-time BM25 over every segment with WAND or Block-Max WAND pruning. Segments are searched in
+ * docid order into one TopKHeap, so the threshold carries over and ties go to the lower docid. A document
+ * is skipped only when an upper bound on its score cannot beat the current k-th score, so the top k is the
+ * same as exhaustive scoring. Term bounds use the block max tf and min document length with the
+ * collection-wide N, df and average length, so they stay valid however the collection is segmented.
+ */
+public class WandSearch {
+
+    private static final double BOUND_SLACK = 1e-9;
+
+    private final SegmentedIndex index;
+    private final BlockMaxPostings[] segments;
+    private final int[][] docLengths;
+    private final int totalDocs;
+    private final double averageDocLength;
+
+    private final LongAdder postingsScored = new LongAdder();
+    private final LongAdder blocksDecoded = new LongAdder();
+
+    public WandSearch(SegmentedIndex index, DocLengths docLengths) throws IOException {
+        this.index = index;
+        this.segments = new BlockMaxPostings[index.getSegmentCount()];
+        this.docLengths = new int[segments.length][];
+        for (int segment = 0; segment < segments.length; segment++) {
+            int docBase = index.getDocBase(segment);
+            segments[segment] = new BlockMaxPostings(index.getSegmentDir(segment), docLengths, docBase);
+            int end = segment + 1 < segments.length ? index.getDocBase(segment + 1) : docLengths.size();
+            this.docLengths[segment] = new int[end - docBase];
+            for (int docId = docBase; docId < end; docId++) {
+                this.docLengths[segment][docId - docBase] = docLengths.get(docId);
+            }
+        }
+        this.totalDocs = docLengths.size();
+        this.averageDocLength = BM25.calculateAverageDocumentLength(docLengths);
+    }
+
+    public long getPostingsScored() {
+        return postingsScored.sum();
+    }
+
+    public long getBlocksDecoded() {
+        return blocksDecoded.sum();
+    }
+
+    public void search(List<String> terms, boolean blockMax, TopKHeap topDocs) {
+        int termCount = terms.size();
+        int[] dfs = new int[termCount];
+        int[][] localTermIds = new int[segments.length][termCount];
+        for (int segment = 0; segment < segments.length; segment++) {
+            for (int k = 0; k < termCount; k++) {
+                localTermIds[segment][k] = index.getDictionary(segment).getTermId(terms.get(k));
+                if (localTermIds[segment][k] >= 0) {
+                    dfs[k] += segments[segment].getDf(localTermIds[segment][k]);
+                }
+            }
+        }
+
+        topDocs.clear();
+        for (int segment = 0; segment < segments.length; segment++) {
+            searchSegment(segment, localTermIds[segment], dfs, blockMax, topDocs);
+        }
+        topDocs.sortDescending();
+    }
+
+    private void searchSegment(int segment, int[] termIds, int[] dfs, boolean blockMax, TopKHeap topDocs) {
+        int docBase = index.getDocBase(segment);
+        int[] lengths = docLengths[segment];
+
+        int cursorCount = 0;
+        BlockMaxPostings.Cursor[] cursors = new BlockMaxPostings.Cursor[termIds.length];
+        int[] queryOrder = new int[termIds.length];
+        for (int k = 0; k < termIds.length; k++) {
+            if (termIds[k] >= 0) {
+                cursors[cursorCount] = segments[segment].open(termIds[k]);
+                queryOrder[cursorCount] = k;
+                cursorCount++;
+            }
+        }
+        if (cursorCount == 0) {
+            return;
+        }
+
+        Term[] query = new Term[cursorCount];
+        for (int i = 0; i < cursorCount; i++) {
+            query[i] = new Term(cursors[i], dfs[queryOrder[i]]);
+        }
+        Term[] byDocId = Arrays.copyOf(query, cursorCount);
+
+        while (true) {
+            sortByDocId(byDocId);
+            double threshold = topDocs.threshold();
+
+            int pivot = -1;
+            double bound = 0;
+            for (int i = 0; i < cursorCount; i++) {
+                if (byDocId[i].cursor.docId() == BlockMaxPostings.Cursor.END) {
+                    break;
+                }
+                bound += byDocId[i].maxScore;
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+            int pivotDocId = byDocId[pivot].cursor.docId();
+            while (pivot + 1 < cursorCount && byDocId[pivot + 1].cursor.docId() == pivotDocId) {
+                pivot++;
+            }
+
+            if (blockMax) {
+                double blockBound = 0;
+                int nextDocId = pivot + 1 < cursorCount ? byDocId[pivot + 1].cursor.docId()
+                        : BlockMaxPostings.Cursor.END;
+                for (int i = 0; i <= pivot; i++) {
+                    BlockMaxPostings.Cursor cursor = byDocId[i].cursor;
+                    cursor.shallowAdvance(pivotDocId);
+                    blockBound += byDocId[i].blockBounds[cursor.blockIndex()];
+                    nextDocId = Math.min(nextDocId, cursor.blockLastDocId() + 1);
+                }
+                if (blockBound <= threshold) {
+                    for (int i = 0; i <= pivot; i++) {
+                        byDocId[i].cursor.advance(nextDocId);
+                    }
+                    continue;
+                }
+            }
+
+            if (byDocId[0].cursor.docId() == pivotDocId) {
+                double score = 0.0;
+                for (Term term : query) {
+                    if (term.cursor.docId() == pivotDocId) {
+                        score += BM25.calculateBM25Score(term.cursor.tf(), term.df, lengths[pivotDocId], totalDocs,
+                                averageDocLength);
+                        postingsScored.increment();
+                        term.cursor.next();
+                    }
+                }
+                topDocs.offer(docBase + pivotDocId, score);
+            } else {
+                for (int i = 0; i < pivot && byDocId[i].cursor.docId() < pivotDocId; i++) {
+                    byDocId[i].cursor.advance(pivotDocId);
+                }
+            }
+        }
+
+        for (Term term : query) {
+            blocksDecoded.add(term.cursor.getBlocksDecoded());
+        }
+    }
+
+    private static void sortByDocId(Term[] terms) {
+        for (int i = 1; i < terms.length; i++) {
+            Term term = terms[i];
+            int j = i - 1;
+            while (j >= 0 && terms[j].cursor.docId() > term.cursor.docId()) {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+    }
+
+    private class Term {
+        private final BlockMaxPostings.Cursor cursor;
+        private final int df;
+        private final double[] blockBounds;
+        private final double maxScore;
+
+        Term(BlockMaxPostings.Cursor cursor, int df) {
+            this.cursor = cursor;
+            this.df = df;
+            blockBounds = new double[cursor.getBlockCount()];
+            double best = 0;
+            for (int block = 0; block < blockBounds.length; block++) {
+                double score = BM25.calculateBM25Score(cursor.getMaxTf(block), df, cursor.getMinDocLength(block),
+                        totalDocs, averageDocLength);
+                blockBounds[block] = Math.max(0, score) * (1 + BOUND_SLACK);
+                best = Math.max(best, blockBounds[block]);
+            }
+            this.maxScore = best;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import benchmarks.Workloads;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * The fixtures behind the benchmarks, in the default package so they can call the engine directly.
+ * Query fixtures are built the way a user would: a synthetic collection is written as gzip, indexed by
+ * IndexEngine.getDocument into one segment and opened as a SegmentedIndex.
+ */
+public class EngineWorkloads implements Workloads {
+
+    static final int MAX_SCORED_POSTINGS = 1 << 16;
+
+    private String[] documents;
+    private String[] texts;
+    private List<TokenBuffer> tokens;
+    private TokenBuffer scratch;
+    private Lexicon lexicon;
+    private PostingsBuffer postings;
+
+    private SegmentedIndex index;
+    private DocLengths docLengths;
+    private Map<Integer, List<String>> queryMap;
+    private List<List<List<List<Integer>>>> queryPostings;
+    private List<BooleanQuery> booleanQueries;
+    private BM25Scorer scorer;
+    private BooleanSearch booleanSearch;
+    private int[] tfs;
+    private int[] dfs;
+    private int[] postingDocLengths;
+    private double averageDocLength;
+
+    public void generateDocuments(int documents, int vocabulary, long seed) {
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabulary, seed);
+        this.documents = new String[documents];
+        texts = new String[documents];
+        tokens = new ArrayList<>(documents);
+        scratch = new TokenBuffer();
+        for (int id = 0; id < documents; id++) {
+            this.documents[id] = corpus.document(id);
+            texts[id] = IndexEngine.extractTextFromTags(this.documents[id]);
+            TokenBuffer documentTokens = new TokenBuffer();
+            Analyzer.get(true).tokenize(texts[id], documentTokens);
+            tokens.add(documentTokens);
+        }
+    }
+
+    public int documentCount() {
+        return documents.length;
+    }
+
+    public String extractTextFromTags(int document) {
+        return IndexEngine.extractTextFromTags(documents[document]);
+    }
+
+    public int tokenize(int document, boolean stem) {
+        scratch.clear();
+        Analyzer.get(stem).tokenize(texts[document], scratch);
+        return scratch.size();
+    }
+
+    public int addToPostings(int document) {
+        if (document == 0 || postings == null) {
+            lexicon = new Lexicon();
+            postings = new PostingsBuffer();
+        }
+        int[] tokenIDs = IndexEngine.convertTokenToIDs(tokens.get(document), lexicon);
+        IndexEngine.addToPostings(tokenIDs, document, postings);
+        return tokenIDs.length;
+    }
+
+    public void buildIndex(String directory, int documents, int vocabulary, int queries, int queryTerms, long seed)
+            throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabulary, seed);
+        String corpusFile = directory + "/corpus.gz";
+        String indexDir = directory + "/index";
+        new File(indexDir).mkdirs();
+        corpus.writeDocuments(corpusFile, documents);
+        String segment = Segments.newSegmentName(indexDir);
+        IndexEngine.getDocument(corpusFile, indexDir + "/" + segment, true);
+        Segments.add(indexDir, segment);
+
+        index = new SegmentedIndex(indexDir);
+        docLengths = index.openDocLengths();
+        scorer = new BM25Scorer(index, docLengths);
+        booleanSearch = new BooleanSearch(index, docLengths);
+
+        queryMap = new HashMap<>();
+        queryPostings = new ArrayList<>();
+        booleanQueries = new ArrayList<>();
+        for (int queryId = 0; queryId < queries; queryId++) {
+            String query = corpus.query(queryId, queryTerms);
+            List<String> terms = IndexEngine.tokenize(query, true);
+            queryMap.put(queryId, terms);
+            List<List<List<Integer>>> results = new ArrayList<>();
+            for (String term : terms) {
+                List<List<Integer>> postingsList = index.loadPostings(term);
+                if (postingsList != null) {
+                    results.add(postingsList);
+                }
+            }
+            queryPostings.add(results);
+            booleanQueries.add(booleanSearch.plan(BooleanQuery.parse(query, true)));
+        }
+
+        // BM25 inputs as the exhaustive scorer meets them, sampled from the postings of every query term
+        List<int[]> inputs = new ArrayList<>();
+        for (List<List<List<Integer>>> results : queryPostings) {
+            for (List<List<Integer>> postingsList : results) {
+                for (List<Integer> posting : postingsList) {
+                    inputs.add(new int[] {posting.get(1), postingsList.size(), docLengths.get(posting.get(0))});
+                }
+            }
+        }
+        Random random = new Random(seed);
+        tfs = new int[Math.max(1, Math.min(inputs.size(), MAX_SCORED_POSTINGS))];
+        dfs = new int[tfs.length];
+        postingDocLengths = new int[tfs.length];
+        for (int i = 0; i < tfs.length && !inputs.isEmpty(); i++) {
+            int[] input = inputs.get(random.nextInt(inputs.size()));
+            tfs[i] = input[0];
+            dfs[i] = input[1];
+            postingDocLengths[i] = input[2];
+        }
+        averageDocLength = BM25.calculateAverageDocumentLength(docLengths);
+    }
+
+    public int queryCount() {
+        return queryPostings.size();
+    }
+
+    public int postingCount() {
+        return tfs.length;
+    }
+
+    public double calculateBM25Score(int posting) {
+        return BM25.calculateBM25Score(tfs[posting], dfs[posting], postingDocLengths[posting], docLengths.size(),
+                averageDocLength);
+    }
+
+    public void processQueries(String outputFile) {
+        BM25.processQueries(queryMap, scorer, index, outputFile, BM25.DEFAULT_K, 1);
+    }
+
+    public String booleanAND(int query) {
+        return BooleanAnd.BooleanAND(query, queryPostings.get(query), index);
+    }
+
+    public int booleanSearch(int query) {
+        return booleanSearch.search(booleanQueries.get(query), true).size();
+    }
+
+    public String getDocNoFromMetaData(int docId) {
+        return BM25.getDocNoFromMetaData(docId, index);
+    }
+}
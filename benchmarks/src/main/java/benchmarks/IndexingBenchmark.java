@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Per-document costs of the indexing pipeline: pulling the text out of the markup, tokenizing it with and
+ * without stemming, and turning the tokens into termIds and postings. Each invocation takes the next
+ * document of the synthetic fixture, so the times average over the document length distribution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexingBenchmark {
+
+    @Param("2000")
+    public int documents;
+
+    @Param("50000")
+    public int vocabulary;
+
+    @Param("42")
+    public long seed;
+
+    private Workloads workloads;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workloads = Workloads.load();
+        workloads.generateDocuments(documents, vocabulary, seed);
+    }
+
+    private int nextDocument() {
+        int document = next;
+        next = document + 1 == documents ? 0 : document + 1;
+        return document;
+    }
+
+    @Benchmark
+    public String extractTextFromTags() {
+        return workloads.extractTextFromTags(nextDocument());
+    }
+
+    @Benchmark
+    public int tokenize() {
+        return workloads.tokenize(nextDocument(), false);
+    }
+
+    @Benchmark
+    public int tokenizeStemmed() {
+        return workloads.tokenize(nextDocument(), true);
+    }
+
+    @Benchmark
+    public int addToPostings() {
+        return workloads.addToPostings(nextDocument());
+    }
+}
@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Query-side costs over a synthetic collection indexed with stemming in a temporary directory: one BM25
+ * score, a whole exhaustive BM25 batch written to a run file, one conjunctive query through the original
+ * list-based BooleanAND and through BooleanSearch, and one DOCNO lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param("10000")
+    public int documents;
+
+    @Param("50000")
+    public int vocabulary;
+
+    @Param("100")
+    public int queries;
+
+    @Param("3")
+    public int queryTerms;
+
+    @Param("42")
+    public long seed;
+
+    private Workloads workloads;
+    private Path directory;
+    private String outputFile;
+    private PrintStream stdout;
+    private int nextQuery;
+    private int nextPosting;
+    private int nextDocId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("search-engine-benchmark");
+        outputFile = directory.resolve("bm25.txt").toString();
+        workloads = Workloads.load();
+        workloads.buildIndex(directory.toString(), documents, vocabulary, queries, queryTerms, seed);
+        // processQueries reports its postings rate on every call, which JMH would relay once per invocation
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private int nextQuery() {
+        int query = nextQuery;
+        nextQuery = query + 1 == workloads.queryCount() ? 0 : query + 1;
+        return query;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double calculateBM25Score() {
+        int posting = nextPosting;
+        nextPosting = posting + 1 == workloads.postingCount() ? 0 : posting + 1;
+        return workloads.calculateBM25Score(posting);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void processQueries() {
+        workloads.processQueries(outputFile);
+    }
+
+    @Benchmark
+    public String booleanAND() {
+        return workloads.booleanAND(nextQuery());
+    }
+
+    @Benchmark
+    public int booleanSearch() {
+        return workloads.booleanSearch(nextQuery());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String getDocNoFromMetaData() {
+        int docId = nextDocId;
+        nextDocId = docId + 1 == documents ? 0 : docId + 1;
+        return workloads.getDocNoFromMetaData(docId);
+    }
+}
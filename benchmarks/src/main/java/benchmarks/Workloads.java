@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.io.IOException;
+
+/*
+ * The engine is in the default package, which code in a named package cannot refer to, and JMH will not
+ * generate benchmarks outside a named package. The benchmarks therefore reach the engine through this
+ * interface, implemented by EngineWorkloads in the default package and loaded by name; with a single
+ * implementation loaded the calls are monomorphic and the JIT inlines them.
+ */
+public interface Workloads {
+
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("EngineWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("EngineWorkloads is missing from the benchmark classpath", e);
+        }
+    }
+
+    // raw documents, their tag-free text and tokens, kept in memory for the indexing benchmarks
+    void generateDocuments(int documents, int vocabulary, long seed);
+
+    int documentCount();
+
+    String extractTextFromTags(int document);
+
+    // analyzes a document's text into a reused token buffer and returns the token count
+    int tokenize(int document, boolean stem);
+
+    // converts a document's tokens to termIds and adds its postings, starting a new lexicon every pass
+    int addToPostings(int document);
+
+    // writes a synthetic collection under directory, indexes it and opens it for the query benchmarks
+    void buildIndex(String directory, int documents, int vocabulary, int queries, int queryTerms, long seed)
+            throws IOException;
+
+    int queryCount();
+
+    int postingCount();
+
+    double calculateBM25Score(int posting);
+
+    void processQueries(String outputFile);
+
+    String booleanAND(int query);
+
+    int booleanSearch(int query);
+
+    String getDocNoFromMetaData(int docId);
+}
@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class BooleanQueryTest {
+
+    private static String parse(String text) {
+        return BooleanQuery.parse(text, false).toString();
+    }
+
+    private static void assertRejected(String text) {
+        assertThrows(IllegalArgumentException.class, () -> BooleanQuery.parse(text, false), text);
+    }
+
+    @Test
+    public void parsesOperatorsAndPhrases() {
+        assertEquals("(a AND b)", parse("a b"));
+        assertEquals("(a AND b)", parse("a AND b"));
+        assertEquals("(a OR (b AND NOT c))", parse("a OR b AND NOT c"));
+        assertEquals("((a OR b) AND c)", parse("(a OR b) c"));
+        assertEquals("(\"new york\"~2 AND NOT NOT a)", parse("\"New York\"~2 NOT NOT a"));
+        assertEquals("(a AND b)", parse("a - b"));
+    }
+
+    @Test
+    public void rejectsOperatorsWithoutOperands() {
+        assertRejected("a OR");
+        assertRejected("OR a");
+        assertRejected("a OR OR b");
+        assertRejected("a AND");
+        assertRejected("AND a");
+        assertRejected("a AND AND b");
+        assertRejected("AND");
+        assertRejected("");
+    }
+
+    @Test
+    public void rejectsEmptyParentheses() {
+        assertRejected("()");
+        assertRejected("a ()");
+        assertRejected("a (OR b)");
+    }
+
+    @Test
+    public void rejectsDanglingNot() {
+        assertRejected("a NOT");
+        assertRejected("NOT");
+        assertRejected("(a NOT) b");
+        assertRejected("a NOT OR b");
+        assertRejected("NOT NOT");
+    }
+
+    @Test
+    public void rejectsUnbalancedParentheses() {
+        assertRejected("(a b");
+        assertRejected("a b)");
+        assertRejected("a) (b");
+    }
+
+    @Test
+    public void rejectsOversizedSlop() {
+        assertRejected("\"a b\"~99999999999");
+    }
+}